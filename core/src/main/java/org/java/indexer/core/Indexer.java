@@ -1,16 +1,26 @@
 package org.java.indexer.core;
 
 import lombok.extern.slf4j.Slf4j;
+import org.java.indexer.core.index.BooleanOperator;
 import org.java.indexer.core.index.FolderWatcherService;
+import org.java.indexer.core.index.FuzzyQueryResult;
 import org.java.indexer.core.index.Index;
+import org.java.indexer.core.index.IndexSettings;
+import org.java.indexer.core.index.IndexingJob;
 import org.java.indexer.core.index.QueryResult;
+import org.java.indexer.core.index.SubstringQueryResult;
+import org.java.indexer.core.index.TermStatistics;
 import org.java.indexer.core.tokenizer.RegexTokenizer;
 import org.java.indexer.core.tokenizer.Tokenizer;
+import org.java.indexer.core.utils.FileTree;
 import org.java.indexer.core.utils.RegExUtils;
 
+import java.io.IOException;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -29,15 +39,31 @@ import static java.util.Collections.emptyList;
  * <pre>
  * Indexer indexer = new Indexer();
  * </pre>
- * <p>All the files in the listed folders and single files will be indexed only if filename is not contained in the
- * ignoredNames collection.
+ * <p>All the files in the listed folders and single files will be indexed unless they match gitignore-style
+ * ignoredNames patterns.
  * <pre>
  * indexer.index(List.of("/path/to/folder", "path/to/file.file"));
  * </pre>
+ * <p>Indexing is performed in background, returned {@link IndexingJob} allows to await it.
+ * <pre>
+ * indexer.index(List.of("/path/to/folder")).getCompletion().join();
+ * </pre>
  * <p>Query result are aggregated in {@link QueryResult} objects.
  * <pre>
  * QueryResult queryResult = indexer.queryToken("token1");
  * </pre>
+ * <p>Typo tolerant queries return occurrences of similar tokens.
+ * <pre>
+ * FuzzyQueryResult fuzzyResult = indexer.queryFuzzy("tokne1", 1);
+ * </pre>
+ * <p>Boolean queries return files containing all the tokens or any of them.
+ * <pre>
+ * QueryResult allResult = indexer.queryBoolean(List.of("token1", "token2"), BooleanOperator.AND);
+ * </pre>
+ * <p>Queries bounded by a timeout return occurrences found so far, such results are marked partial.
+ * <pre>
+ * QueryResult boundedResult = indexer.queryToken("token1", Duration.ofMillis(100));
+ * </pre>
  * <p> If the index is no longer needed {@link Indexer#close} should be called upon Indexer object.
  * It is used to stop file watcher and to prevent memory leakage.
  * <pre>
@@ -75,7 +101,7 @@ public class Indexer implements AutoCloseable {
      * Empty index initialization. Index will use RegexTokenizer with default regular expression
      * that will tokenize file word by word.
      *
-     * @param ignoredNames collection of ignored filenames. Files with the names contained in that collection will not be indexed. Might be null or empty.
+     * @param ignoredNames gitignore-style patterns of ignored files and folders, e.g. {@code .DS_Store}, {@code *.log} or {@code node_modules/}. Ignored folders are neither walked nor watched. Might be null or empty.
      * @see RegexTokenizer
      */
     public Indexer(Collection<String> ignoredNames) {
@@ -86,7 +112,7 @@ public class Indexer implements AutoCloseable {
     /**
      * Empty index initialization. Index will use RegexTokenizer with provided regular expression as tokenizer.
      * File will be split line by line around matches of given pattern using {@link  Pattern#split}.
-     * @param ignoredNames collection of ignored filenames. Files with the names contained in that collection will not be indexed. Might be null or empty.
+     * @param ignoredNames gitignore-style patterns of ignored files and folders, e.g. {@code .DS_Store}, {@code *.log} or {@code node_modules/}. Ignored folders are neither walked nor watched. Might be null or empty.
      * @param regEx        String representation of regular expression
      * @throws RuntimeException in case of invalid regular expression
      * @see RegexTokenizer
@@ -101,7 +127,7 @@ public class Indexer implements AutoCloseable {
     /**
      * Empty index initialization. Index will use provided tokenizer object for every file tokenization.
      *
-     * @param ignoredNames collection of ignored filenames. Files with the names contained in that collection will not be indexed. Might be null or empty.
+     * @param ignoredNames gitignore-style patterns of ignored files and folders, e.g. {@code .DS_Store}, {@code *.log} or {@code node_modules/}. Ignored folders are neither walked nor watched. Might be null or empty.
      * @param tokenizer    implementation of Tokenizer interface
      * @throws RuntimeException in case of null tokenizer
      * @see Tokenizer
@@ -112,26 +138,58 @@ public class Indexer implements AutoCloseable {
         this.folderWatcherService = new FolderWatcherService(ignoredNames, index);
     }
 
+    /**
+     * Empty index initialization. Index will use provided tokenizer object for every file tokenization
+     * and provided settings for index tuning.
+     *
+     * @param ignoredNames gitignore-style patterns of ignored files and folders, e.g. {@code .DS_Store}, {@code *.log} or {@code node_modules/}. Ignored folders are neither walked nor watched. Might be null or empty.
+     * @param tokenizer    implementation of Tokenizer interface
+     * @param settings     index tuning options, {@link IndexSettings#DEFAULT} might be used
+     * @throws RuntimeException in case of null tokenizer or settings
+     * @see Tokenizer
+     * @see IndexSettings
+     */
+
+    public Indexer(Collection<String> ignoredNames, Tokenizer tokenizer, IndexSettings settings) {
+        this.index = new Index(ignoredNames,
+                Optional.ofNullable(tokenizer).orElseThrow(() -> new RuntimeException("Tokenizer cannot be null")),
+                Optional.ofNullable(settings).orElseThrow(() -> new RuntimeException("Settings cannot be null")));
+        this.folderWatcherService = new FolderWatcherService(ignoredNames, index);
+    }
+
     /**
      * Indexes provided files and folders. If parsing path throws an exception,
      * indexing will not be performed and invalid path will be ignored.
+     * Files are tokenized in background, returned job might be used to track progress or to await completion.
      *
      * @param paths list of String representations of paths to be indexed
+     * @return job indexing the files, cancelling it stops tokenization of not yet tokenized files
      * @see InvalidPathException
      */
 
-    public void index(List<String> paths) {
-        paths.forEach(path -> {
-            Path normalizedPath;
-            try {
-                normalizedPath = Paths.get(path).normalize();
-            } catch (InvalidPathException e) {
-                log.error("Path {} is not valid", path, e);
-                return;
-            }
-            index.add(normalizedPath);
-            folderWatcherService.watch(normalizedPath);
-        });
+    public IndexingJob index(List<String> paths) {
+        final List<FileTree> trees = walk(paths);
+        final IndexingJob job = index.addTrees(trees);
+        trees.forEach(folderWatcherService::watch);
+        return job;
+    }
+
+    /**
+     * Indexes provided files and folders in bulk-load mode, which is faster for the initial indexing of large trees.
+     * Files are tokenized in parallel into partial indexes that are merged and made visible to queries at once.
+     * Unlike {@link Indexer#index}, the method returns when all the files are indexed. Files and folders are watched
+     * for changes after that. Invalid paths are ignored.
+     *
+     * @param paths list of String representations of paths to be indexed
+     * @return completed job with indexing statistics
+     * @see InvalidPathException
+     */
+
+    public IndexingJob bulkIndex(List<String> paths) {
+        final List<FileTree> trees = walk(paths);
+        final IndexingJob job = index.bulkLoadTrees(trees);
+        trees.forEach(folderWatcherService::watch);
+        return job;
     }
 
     /**
@@ -143,21 +201,227 @@ public class Indexer implements AutoCloseable {
      */
 
     public QueryResult queryToken(String token) {
+        return queryToken(token, null);
+    }
+
+    /**
+     * Returns token occurrences found within the timeout. If the timeout is reached, the result contains
+     * occurrences found so far and is marked as {@link QueryResult#isPartial partial}.
+     *
+     * @param token   element to be found in the indexed files
+     * @param timeout time budget of the query, null means the query is not bounded
+     * @return {@link QueryResult} representation of token occurrences in the index
+     * @throws IllegalArgumentException if the token in null or empty or timeout is negative
+     */
+
+    public QueryResult queryToken(String token, Duration timeout) {
+        checkTimeout(timeout);
+        if (token != null && !token.isEmpty()) {
+            return index.queryToken(token, timeout);
+        } else {
+            throw new IllegalArgumentException("Token should not be null or empty");
+        }
+    }
+
+    /**
+     * Returns occurrences of indexed tokens similar to the given one, which tolerates typos in the query.
+     * Tokens are similar if one turns into another with at most {@code maxEdits} insertions, deletions,
+     * substitutions or transpositions of adjacent characters.
+     *
+     * @param token    element to be found in the indexed files
+     * @param maxEdits maximal edit distance, 1 or 2
+     * @return {@link FuzzyQueryResult} with occurrences of every matched token variant
+     * @throws IllegalArgumentException if the token in null or empty or edit distance is not 1 or 2
+     */
+
+    public FuzzyQueryResult queryFuzzy(String token, int maxEdits) {
+        return queryFuzzy(token, maxEdits, null);
+    }
+
+    /**
+     * Same as {@link #queryFuzzy(String, int)} bounded by the timeout, variants not queried in time are omitted
+     * and the result is marked as partial.
+     *
+     * @param timeout time budget of the query, null means the query is not bounded
+     * @throws IllegalArgumentException if the token in null or empty, edit distance is not 1 or 2
+     *                                  or timeout is negative
+     */
+
+    public FuzzyQueryResult queryFuzzy(String token, int maxEdits, Duration timeout) {
+        checkTimeout(timeout);
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("Token should not be null or empty");
+        }
+        if (maxEdits < 1 || maxEdits > 2) {
+            throw new IllegalArgumentException("Edit distance should be 1 or 2");
+        }
+        return index.queryFuzzy(token, maxEdits, timeout);
+    }
+
+    /**
+     * Returns occurrences of indexed tokens containing the fragment, e.g. {@code Timeout} matches
+     * {@code connectTimeoutMillis}. Search is faster with {@link IndexSettings#isSubstringIndex} enabled.
+     *
+     * @param fragment part of tokens to be found in the indexed files
+     * @return {@link SubstringQueryResult} with occurrences of every matched token
+     * @throws IllegalArgumentException if the fragment in null or empty
+     */
+
+    public SubstringQueryResult querySubstring(String fragment) {
+        return querySubstring(fragment, null);
+    }
+
+    /**
+     * Same as {@link #querySubstring(String)} bounded by the timeout, matches not queried in time are omitted
+     * and the result is marked as partial.
+     *
+     * @param timeout time budget of the query, null means the query is not bounded
+     * @throws IllegalArgumentException if the fragment in null or empty or timeout is negative
+     */
+
+    public SubstringQueryResult querySubstring(String fragment, Duration timeout) {
+        checkTimeout(timeout);
+        if (fragment != null && !fragment.isEmpty()) {
+            return index.querySubstring(fragment, timeout);
+        } else {
+            throw new IllegalArgumentException("Fragment should not be null or empty");
+        }
+    }
+
+    /**
+     * Returns occurrences in files containing all the tokens for {@link BooleanOperator#AND} or any of them for
+     * {@link BooleanOperator#OR}. Occurrences of a file are the sum of occurrences of the tokens found in it.
+     *
+     * @param tokens   elements to be found in the indexed files
+     * @param operator how occurrences of the tokens are combined
+     * @return {@link QueryResult} with the query string joined by the operator
+     * @throws IllegalArgumentException if tokens are null or empty, contain null or empty token
+     *                                  or the operator is null
+     */
+
+    public QueryResult queryBoolean(List<String> tokens, BooleanOperator operator) {
+        return queryBoolean(tokens, operator, null);
+    }
+
+    /**
+     * Same as {@link #queryBoolean(List, BooleanOperator)} bounded by the timeout.
+     *
+     * @param timeout time budget of the query, null means the query is not bounded
+     * @throws IllegalArgumentException if tokens are null or empty, contain null or empty token,
+     *                                  the operator is null or timeout is negative
+     */
+
+    public QueryResult queryBoolean(List<String> tokens, BooleanOperator operator, Duration timeout) {
+        checkTimeout(timeout);
+        if (tokens == null || tokens.isEmpty() || tokens.stream().anyMatch(token -> token == null || token.isEmpty())) {
+            throw new IllegalArgumentException("Tokens should not be null or empty");
+        }
+        if (operator == null) {
+            throw new IllegalArgumentException("Operator should not be null");
+        }
+        return index.queryBoolean(tokens, operator, timeout);
+    }
+
+    /**
+     * Returns number of indexed files containing the token and number of its occurrences in all of them.
+     * Statistics are maintained as files are indexed, so files are not scanned.
+     *
+     * @param token element to get statistics of
+     * @return {@link TermStatistics} with zero frequencies if the token is not indexed
+     * @throws IllegalArgumentException if the token in null or empty
+     */
+
+    public TermStatistics getTermStatistics(String token) {
         if (token != null && !token.isEmpty()) {
-            return index.queryToken(token);
+            return index.termStatistics(token);
         } else {
             throw new IllegalArgumentException("Token should not be null or empty");
         }
     }
 
+    /**
+     * Returns the most common tokens of the index, e.g. to find stopwords.
+     *
+     * @param k maximal number of tokens
+     * @return statistics of at most {@code k} tokens contained in the largest number of files
+     * @throws IllegalArgumentException if k is not positive
+     */
+
+    public List<TermStatistics> topTokens(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Number of tokens should be positive");
+        }
+        return index.topTokens(k);
+    }
+
+    private static void checkTimeout(Duration timeout) {
+        if (timeout != null && timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout should not be negative");
+        }
+    }
+
+    /**
+     * Writes complete index state to the file in compact binary format. Index is not blocked while the snapshot is
+     * being written, snapshot contains index state at the moment of the call.
+     *
+     * @param target file to write the snapshot to, existing file is overwritten
+     * @throws RuntimeException if the snapshot cannot be written
+     */
+
+    public void exportSnapshot(Path target) {
+        try {
+            index.exportSnapshot(target);
+        } catch (IOException e) {
+            throw new RuntimeException("Index snapshot cannot be written to " + target, e);
+        }
+    }
+
+    /**
+     * Replaces index state with the state previously written by {@link Indexer#exportSnapshot}. Queries see either
+     * the previous or the imported state, index is not changed if the snapshot cannot be read.
+     * Imported files are not watched, {@link Indexer#index} should be called for them to be watched. Files with
+     * unchanged content are not tokenized again in that case.
+     *
+     * @param source snapshot file
+     * @throws RuntimeException if the snapshot cannot be read
+     */
+
+    public void importSnapshot(Path source) {
+        try {
+            index.importSnapshot(source);
+        } catch (IOException e) {
+            throw new RuntimeException("Index snapshot cannot be read from " + source, e);
+        }
+    }
+
     /**
      * This method is to be called in case index in no longer needed.
-     * It stops index from watching for changes in the indexed files and folders and clears current index.
+     * It stops index from watching for changes in the indexed files and folders, cancels indexing jobs,
+     * stops index threads and clears current index. Index cannot be used after that.
      * Not using this method before GC collects {@link Indexer} might cause memory leakage.
      */
 
     public void close() {
         folderWatcherService.stop();
-        index.clear();
+        index.close();
+    }
+
+    /**
+     * Walks each valid path once, the trees are shared by indexing and watching.
+     */
+    private List<FileTree> walk(List<String> paths) {
+        return index.walk(normalize(paths));
+    }
+
+    private static List<Path> normalize(List<String> paths) {
+        final List<Path> normalizedPaths = new ArrayList<>();
+        paths.forEach(path -> {
+            try {
+                normalizedPaths.add(Paths.get(path).normalize());
+            } catch (InvalidPathException e) {
+                log.error("Path {} is not valid", path, e);
+            }
+        });
+        return normalizedPaths;
     }
 }
@@ -0,0 +1,165 @@
+package org.java.indexer.core.index;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Read access to entries of zip (including jar) and gzip archives without extracting them.
+ * Entries are indexed as files with virtual paths made of the archive path and the entry name,
+ * e.g. {@code /path/archive.zip!/dir/file.txt}. Gzip archive has a single entry named as the archive
+ * without {@code .gz} extension.
+ * <p>Every entry has a checksum made of its size and CRC-32 which are read without decompression,
+ * so changed entries are found without reading the whole archive.
+ */
+abstract class Archive implements Closeable {
+
+    private static final String ENTRY_SEPARATOR = "!";
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private final Path root;
+
+    private Archive(Path archivePath) {
+        this.root = rootOf(archivePath);
+    }
+
+    static boolean isArchive(Path path) {
+        final String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".jar")
+                || (name.endsWith(GZIP_EXTENSION) && !name.endsWith(".tar.gz"));
+    }
+
+    static Archive open(Path archivePath) throws IOException {
+        if (archivePath.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(GZIP_EXTENSION)) {
+            return new GzipArchive(archivePath);
+        }
+        return new ZipArchive(archivePath);
+    }
+
+    /**
+     * @return virtual folder containing all the archive entries
+     */
+    static Path rootOf(Path archivePath) {
+        return archivePath.resolveSibling(archivePath.getFileName() + ENTRY_SEPARATOR);
+    }
+
+    /**
+     * @return checksums of archive entries by their virtual paths, folders and entries with names
+     * pointing outside the archive are omitted
+     */
+    abstract Map<Path, ContentFingerprint> getEntries();
+
+    /**
+     * Opens decompressing stream of the entry. Different entries might be read by different threads concurrently.
+     */
+    abstract InputStream openEntry(Path entryPath) throws IOException;
+
+    Path entryPath(String entryName) {
+        final Path entryPath = root.resolve(entryName.replaceFirst("^/+", "")).normalize();
+        return entryPath.startsWith(root) && !entryPath.equals(root) ? entryPath : null;
+    }
+
+    private static class ZipArchive extends Archive {
+        private final ZipFile zipFile;
+        private final Map<Path, ZipEntry> entries = new LinkedHashMap<>();
+
+        private ZipArchive(Path archivePath) throws IOException {
+            super(archivePath);
+            this.zipFile = new ZipFile(archivePath.toFile());
+            final Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                final ZipEntry entry = zipEntries.nextElement();
+                final Path entryPath = entry.isDirectory() ? null : entryPath(entry.getName());
+                if (entryPath != null) {
+                    entries.put(entryPath, entry);
+                }
+            }
+        }
+
+        @Override
+        Map<Path, ContentFingerprint> getEntries() {
+            final Map<Path, ContentFingerprint> checksums = new LinkedHashMap<>();
+            entries.forEach((path, entry) -> checksums.put(path, new ContentFingerprint(entry.getSize(), entry.getCrc())));
+            return checksums;
+        }
+
+        @Override
+        InputStream openEntry(Path entryPath) throws IOException {
+            final ZipEntry entry = entries.get(entryPath);
+            if (entry == null) {
+                throw new IOException("Entry " + entryPath + " is not found");
+            }
+            return zipFile.getInputStream(entry);
+        }
+
+        @Override
+        public void close() throws IOException {
+            zipFile.close();
+        }
+    }
+
+    private static class GzipArchive extends Archive {
+        private static final int TRAILER_SIZE = 8;
+
+        private final Path archivePath;
+        private final Path entryPath;
+        private final ContentFingerprint checksum;
+
+        /**
+         * Checksum is made of the archive size and CRC-32 and size of uncompressed content from the trailer.
+         */
+        private GzipArchive(Path archivePath) throws IOException {
+            super(archivePath);
+            this.archivePath = archivePath;
+            final String name = archivePath.getFileName().toString();
+            this.entryPath = rootOf(archivePath).resolve(name.substring(0, name.length() - GZIP_EXTENSION.length()));
+            try (final FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                if (size < TRAILER_SIZE) {
+                    throw new IOException("File " + archivePath + " is not a gzip archive");
+                }
+                final ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                while (trailer.hasRemaining()) {
+                    if (channel.read(trailer, size - TRAILER_SIZE + trailer.position()) < 0) {
+                        throw new EOFException("File " + archivePath + " is truncated");
+                    }
+                }
+                trailer.flip();
+                this.checksum = new ContentFingerprint(size, trailer.getLong());
+            }
+        }
+
+        @Override
+        Map<Path, ContentFingerprint> getEntries() {
+            return Collections.singletonMap(entryPath, checksum);
+        }
+
+        @Override
+        InputStream openEntry(Path entryPath) throws IOException {
+            if (!this.entryPath.equals(entryPath)) {
+                throw new IOException("Entry " + entryPath + " is not found");
+            }
+            return new GZIPInputStream(new BufferedInputStream(Files.newInputStream(archivePath)));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
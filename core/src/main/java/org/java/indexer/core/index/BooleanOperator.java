@@ -0,0 +1,17 @@
+package org.java.indexer.core.index;
+
+/**
+ * Defines how occurrences of several tokens are combined by a boolean query.
+ */
+public enum BooleanOperator {
+
+    /**
+     * Files containing every token.
+     */
+    AND,
+
+    /**
+     * Files containing at least one of the tokens.
+     */
+    OR
+}
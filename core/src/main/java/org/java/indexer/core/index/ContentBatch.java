@@ -0,0 +1,112 @@
+package org.java.indexer.core.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Contents acquired by a single bulk load worker without updating shared structures of the {@link ContentRegistry}.
+ * Files with equal fingerprint within the batch share stored tokens and term statistics are summed up locally,
+ * batches are counted in the registry at once by {@link ContentRegistry#register}.
+ * <p>Not thread safe, every worker owns its batch. Only {@link #finish} and {@link #discard} may be called
+ * by other threads, so a batch which is not registered is released once its worker is finished.
+ */
+class ContentBatch {
+
+    private final ContentRegistry registry;
+    private final Map<ContentFingerprint, BatchContent> contents = new HashMap<>();
+    private final Map<String, TermStatistics> termStatistics = new HashMap<>();
+    private final Map<ContentFingerprint, Integer> retained = new HashMap<>();
+    private final List<Map<String, Integer>> unshared = new ArrayList<>();
+    private boolean finished;
+    private boolean discarded;
+
+    ContentBatch(ContentRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Same as {@link ContentRegistry#acquire}, contents already registered are referenced right away,
+     * new contents are registered later.
+     */
+    Map<String, Integer> acquire(ContentFingerprint fingerprint, Supplier<Map<String, Integer>> tokenizer) {
+        final Map<String, Integer> acquiredTokens = acquireContent(fingerprint, tokenizer);
+        acquiredTokens.forEach((token, count) ->
+                termStatistics.merge(token, new TermStatistics(token, 1, count), TermStatistics::merged));
+        return acquiredTokens;
+    }
+
+    private Map<String, Integer> acquireContent(ContentFingerprint fingerprint, Supplier<Map<String, Integer>> tokenizer) {
+        if (fingerprint == null) {
+            final Map<String, Integer> storedTokens = registry.store(tokenizer.get());
+            unshared.add(storedTokens);
+            return storedTokens;
+        }
+        final BatchContent batchContent = contents.get(fingerprint);
+        if (batchContent != null) {
+            batchContent.references++;
+            return batchContent.storedTokens;
+        }
+        final Map<String, Integer> registeredTokens = registry.retain(fingerprint);
+        if (registeredTokens != null) {
+            retained.merge(fingerprint, 1, Integer::sum);
+            return registeredTokens;
+        }
+        final Map<String, Integer> storedTokens = registry.store(tokenizer.get());
+        contents.put(fingerprint, new BatchContent(storedTokens));
+        return storedTokens;
+    }
+
+    /**
+     * Called by the worker when it stops acquiring contents.
+     */
+    synchronized void finish() {
+        finished = true;
+        if (discarded) {
+            release();
+        }
+    }
+
+    /**
+     * Releases everything acquired by the batch instead of registering it, right away if the worker is finished
+     * or when it finishes.
+     */
+    synchronized void discard() {
+        discarded = true;
+        if (finished) {
+            release();
+        }
+    }
+
+    private void release() {
+        contents.values().forEach(batchContent -> registry.release(batchContent.storedTokens));
+        retained.forEach((fingerprint, references) -> {
+            for (int i = 0; i < references; i++) {
+                registry.releaseRetained(fingerprint);
+            }
+        });
+        unshared.forEach(registry::release);
+        contents.clear();
+        retained.clear();
+        unshared.clear();
+    }
+
+    Map<ContentFingerprint, BatchContent> getContents() {
+        return contents;
+    }
+
+    Map<String, TermStatistics> getTermStatistics() {
+        return termStatistics;
+    }
+
+    static class BatchContent {
+        final Map<String, Integer> storedTokens;
+        int references = 1;
+
+        private BatchContent(Map<String, Integer> storedTokens) {
+            this.storedTokens = storedTokens;
+        }
+    }
+}
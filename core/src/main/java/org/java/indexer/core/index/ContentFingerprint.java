@@ -0,0 +1,41 @@
+package org.java.indexer.core.index;
+
+import lombok.Value;
+import org.java.indexer.core.utils.XxHash64;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Identifies file content by its size and 64-bit hash.
+ */
+@Value
+class ContentFingerprint {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    long size;
+    long hash;
+
+    static ContentFingerprint of(Path path) throws IOException {
+        final XxHash64 hash = new XxHash64();
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                hash.update(buffer);
+                buffer.clear();
+            }
+        }
+        return new ContentFingerprint(hash.getLength(), hash.digest());
+    }
+
+    static ContentFingerprint of(byte[] content) {
+        final XxHash64 hash = new XxHash64();
+        hash.update(ByteBuffer.wrap(content));
+        return new ContentFingerprint(hash.getLength(), hash.digest());
+    }
+}
@@ -0,0 +1,168 @@
+package org.java.indexer.core.index;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares tokenized content between files with equal {@link ContentFingerprint}.
+ * Every indexed file holds one reference, stored tokens are released together with the last reference.
+ * Files without fingerprint own their tokens exclusively.
+ * <p>Every acquired and released reference is counted in the {@link TermDictionary} of the registry.
+ */
+class ContentRegistry {
+
+    private final TokenStorage tokenStorage;
+    private final ConcurrentHashMap<ContentFingerprint, SharedContent> contents = new ConcurrentHashMap<>();
+    private final TermDictionary termDictionary;
+
+    ContentRegistry(TokenStorage tokenStorage) {
+        this(tokenStorage, false);
+    }
+
+    /**
+     * @param trigramIndex whether terms are indexed by trigrams for substring search
+     */
+    ContentRegistry(TokenStorage tokenStorage, boolean trigramIndex) {
+        this.tokenStorage = tokenStorage;
+        this.termDictionary = new TermDictionary(trigramIndex);
+    }
+
+    /**
+     * Returns stored tokens of the content and takes a reference to them.
+     * Tokenizer is invoked only if there is no indexed file with the same content.
+     *
+     * @param fingerprint content fingerprint, null if content should not be shared
+     * @param tokenizer   supplier of tokens of the content
+     */
+    Map<String, Integer> acquire(ContentFingerprint fingerprint, Supplier<Map<String, Integer>> tokenizer) {
+        final Map<String, Integer> acquiredTokens = acquireContent(fingerprint, tokenizer);
+        termDictionary.add(acquiredTokens);
+        return acquiredTokens;
+    }
+
+    private Map<String, Integer> acquireContent(ContentFingerprint fingerprint, Supplier<Map<String, Integer>> tokenizer) {
+        if (fingerprint == null) {
+            return tokenStorage.store(tokenizer.get());
+        }
+        final SharedContent existing = contents.computeIfPresent(fingerprint, (key, content) -> content.retain(1));
+        if (existing != null) {
+            return existing.storedTokens;
+        }
+        final Map<String, Integer> storedTokens = tokenStorage.store(tokenizer.get());
+        final SharedContent registered = contents.compute(fingerprint, (key, content) ->
+                content == null ? new SharedContent(storedTokens, 1) : content.retain(1));
+        if (registered.storedTokens != storedTokens) {
+            tokenStorage.release(storedTokens);
+        }
+        return registered.storedTokens;
+    }
+
+    /**
+     * Takes a reference to stored tokens of the content without counting them in the term dictionary.
+     *
+     * @return stored tokens or null if there is no indexed file with the same content
+     */
+    Map<String, Integer> retain(ContentFingerprint fingerprint) {
+        final SharedContent existing = contents.computeIfPresent(fingerprint, (key, content) -> content.retain(1));
+        return existing != null ? existing.storedTokens : null;
+    }
+
+    /**
+     * Stores tokens which are not registered yet, see {@link ContentBatch}.
+     */
+    Map<String, Integer> store(Map<String, Integer> countedTokens) {
+        return tokenStorage.store(countedTokens);
+    }
+
+    /**
+     * Releases tokens stored by {@link #store} which are never registered.
+     */
+    void release(Map<String, Integer> storedTokens) {
+        tokenStorage.release(storedTokens);
+    }
+
+    /**
+     * Registers contents of the batches and counts their files in the term dictionary, every distinct term
+     * is updated once. Content stored by several batches or registered meanwhile is kept once, its other copies
+     * are released.
+     *
+     * @return replacements of released token maps, files referring to them should refer to the replacements
+     */
+    Map<Map<String, Integer>, Map<String, Integer>> register(Collection<ContentBatch> batches) {
+        final Map<Map<String, Integer>, Map<String, Integer>> replacements = new IdentityHashMap<>();
+        final Map<String, TermStatistics> termStatistics = new HashMap<>();
+        for (ContentBatch batch : batches) {
+            batch.getContents().forEach((fingerprint, batchContent) -> {
+                final SharedContent registered = contents.compute(fingerprint, (key, content) -> content == null
+                        ? new SharedContent(batchContent.storedTokens, batchContent.references)
+                        : content.retain(batchContent.references));
+                if (registered.storedTokens != batchContent.storedTokens) {
+                    tokenStorage.release(batchContent.storedTokens);
+                    replacements.put(batchContent.storedTokens, registered.storedTokens);
+                }
+            });
+            batch.getTermStatistics().forEach((token, statistics) ->
+                    termStatistics.merge(token, statistics, TermStatistics::merged));
+        }
+        termDictionary.addAll(termStatistics);
+        return replacements;
+    }
+
+    /**
+     * Drops reference of the indexed file to its tokens.
+     */
+    void release(IndexedFile indexedFile) {
+        termDictionary.remove(indexedFile.getCountedTokens());
+        if (indexedFile.getFingerprint() == null) {
+            tokenStorage.release(indexedFile.getCountedTokens());
+            return;
+        }
+        releaseRetained(indexedFile.getFingerprint());
+    }
+
+    /**
+     * Drops reference taken by {@link #retain}.
+     */
+    void releaseRetained(ContentFingerprint fingerprint) {
+        contents.computeIfPresent(fingerprint, (key, content) -> {
+            if (--content.references == 0) {
+                tokenStorage.release(content.storedTokens);
+                return null;
+            }
+            return content;
+        });
+    }
+
+    TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    int size() {
+        return contents.size();
+    }
+
+    void clear() {
+        contents.clear();
+        termDictionary.clear();
+        tokenStorage.clear();
+    }
+
+    private static class SharedContent {
+        private final Map<String, Integer> storedTokens;
+        private int references;
+
+        private SharedContent(Map<String, Integer> storedTokens, int references) {
+            this.storedTokens = storedTokens;
+            this.references = references;
+        }
+
+        private SharedContent retain(int count) {
+            references += count;
+            return this;
+        }
+    }
+}
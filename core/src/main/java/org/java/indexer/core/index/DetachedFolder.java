@@ -0,0 +1,26 @@
+package org.java.indexer.core.index;
+
+import lombok.Value;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexed files of a folder removed from the index by {@link Index#detachFolder}. Contents of fingerprinted files
+ * stay retained, so the folder found under another path is attached again without reading its files.
+ */
+@Value
+class DetachedFolder {
+
+    Path path;
+    /**
+     * Fingerprinted files, every file holds a retained reference to its content.
+     */
+    List<IndexedFile> files;
+    /**
+     * Files without fingerprint, they are indexed again when the folder is attached.
+     */
+    List<Path> unfingerprintedFiles;
+    Map<Path, Map<Path, ContentFingerprint>> archiveEntries;
+}
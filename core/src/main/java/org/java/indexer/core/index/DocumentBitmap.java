@@ -0,0 +1,389 @@
+package org.java.indexer.core.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable compressed set of document ids in the style of Roaring bitmaps. Ids are split by their high 16 bits
+ * into containers: containers with at most {@value #ARRAY_LIMIT} ids keep sorted low bits, denser containers keep
+ * {@value #WORDS} words of bits. Intersection and union of dense containers are word-parallel bitwise operations.
+ */
+final class DocumentBitmap {
+
+    /**
+     * Returned by cursors when there are no more ids.
+     */
+    static final int END = Integer.MAX_VALUE;
+
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1024;
+    private static final DocumentBitmap EMPTY = new DocumentBitmap(new char[0], new Object[0]);
+
+    private final char[] keys;
+    /**
+     * Sorted {@code char[]} low bits or {@code long[]} bits of every key.
+     */
+    private final Object[] containers;
+    /**
+     * Number of ids in containers before the container, the last element is the cardinality.
+     */
+    private final int[] ranks;
+
+    private DocumentBitmap(char[] keys, Object[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        this.ranks = new int[containers.length + 1];
+        for (int i = 0; i < containers.length; i++) {
+            ranks[i + 1] = ranks[i] + cardinality(containers[i]);
+        }
+    }
+
+    /**
+     * @param documentIds ascending ids, only the first {@code size} are taken
+     */
+    static DocumentBitmap of(int[] documentIds, int size) {
+        final Builder builder = new Builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(documentIds[i]);
+        }
+        return builder.build();
+    }
+
+    int cardinality() {
+        return ranks[containers.length];
+    }
+
+    boolean isEmpty() {
+        return containers.length == 0;
+    }
+
+    boolean contains(int documentId) {
+        final int index = Arrays.binarySearch(keys, (char) (documentId >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        final Object container = containers[index];
+        final int low = documentId & 0xFFFF;
+        return container instanceof char[]
+                ? Arrays.binarySearch((char[]) container, (char) low) >= 0
+                : (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    DocumentBitmap and(DocumentBitmap other) {
+        final List<Character> resultKeys = new ArrayList<>();
+        final List<Object> resultContainers = new ArrayList<>();
+        for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                final Object container = and(containers[i], other.containers[j]);
+                if (container != null) {
+                    resultKeys.add(keys[i]);
+                    resultContainers.add(container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return of(resultKeys, resultContainers);
+    }
+
+    DocumentBitmap or(DocumentBitmap other) {
+        final List<Character> resultKeys = new ArrayList<>();
+        final List<Object> resultContainers = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                resultKeys.add(keys[i]);
+                resultContainers.add(containers[i++]);
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                resultKeys.add(other.keys[j]);
+                resultContainers.add(other.containers[j++]);
+            } else {
+                resultKeys.add(keys[i]);
+                resultContainers.add(or(containers[i++], other.containers[j++]));
+            }
+        }
+        return of(resultKeys, resultContainers);
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    private static DocumentBitmap of(List<Character> keys, List<Object> containers) {
+        if (containers.isEmpty()) {
+            return EMPTY;
+        }
+        final char[] keysArray = new char[keys.size()];
+        for (int i = 0; i < keysArray.length; i++) {
+            keysArray[i] = keys.get(i);
+        }
+        return new DocumentBitmap(keysArray, containers.toArray());
+    }
+
+    /**
+     * @return intersection of containers or null if it is empty
+     */
+    private static Object and(Object first, Object second) {
+        if (first instanceof char[] && second instanceof char[]) {
+            final char[] firstValues = (char[]) first;
+            final char[] secondValues = (char[]) second;
+            final char[] values = new char[Math.min(firstValues.length, secondValues.length)];
+            int size = 0;
+            for (int i = 0, j = 0; i < firstValues.length && j < secondValues.length; ) {
+                if (firstValues[i] < secondValues[j]) {
+                    i++;
+                } else if (firstValues[i] > secondValues[j]) {
+                    j++;
+                } else {
+                    values[size++] = firstValues[i];
+                    i++;
+                    j++;
+                }
+            }
+            return size == 0 ? null : Arrays.copyOf(values, size);
+        }
+        if (first instanceof char[] || second instanceof char[]) {
+            final char[] arrayValues = (char[]) (first instanceof char[] ? first : second);
+            final long[] words = (long[]) (first instanceof char[] ? second : first);
+            final char[] values = new char[arrayValues.length];
+            int size = 0;
+            for (char value : arrayValues) {
+                if ((words[value >>> 6] & (1L << value)) != 0) {
+                    values[size++] = value;
+                }
+            }
+            return size == 0 ? null : Arrays.copyOf(values, size);
+        }
+        final long[] firstWords = (long[]) first;
+        final long[] secondWords = (long[]) second;
+        final long[] words = new long[WORDS];
+        int cardinality = 0;
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = firstWords[i] & secondWords[i];
+            cardinality += Long.bitCount(words[i]);
+        }
+        return cardinality == 0 ? null : cardinality <= ARRAY_LIMIT ? toArray(words, cardinality) : words;
+    }
+
+    private static Object or(Object first, Object second) {
+        if (first instanceof char[] && second instanceof char[]) {
+            final char[] firstValues = (char[]) first;
+            final char[] secondValues = (char[]) second;
+            final char[] values = new char[firstValues.length + secondValues.length];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < firstValues.length || j < secondValues.length) {
+                if (j == secondValues.length || (i < firstValues.length && firstValues[i] < secondValues[j])) {
+                    values[size++] = firstValues[i++];
+                } else if (i == firstValues.length || firstValues[i] > secondValues[j]) {
+                    values[size++] = secondValues[j++];
+                } else {
+                    values[size++] = firstValues[i++];
+                    j++;
+                }
+            }
+            return size <= ARRAY_LIMIT ? Arrays.copyOf(values, size) : toWords(values, size);
+        }
+        if (first instanceof char[] || second instanceof char[]) {
+            final char[] arrayValues = (char[]) (first instanceof char[] ? first : second);
+            final long[] words = ((long[]) (first instanceof char[] ? second : first)).clone();
+            for (char value : arrayValues) {
+                words[value >>> 6] |= 1L << value;
+            }
+            return words;
+        }
+        final long[] firstWords = (long[]) first;
+        final long[] secondWords = (long[]) second;
+        final long[] words = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = firstWords[i] | secondWords[i];
+        }
+        return words;
+    }
+
+    private static int cardinality(Object container) {
+        if (container instanceof char[]) {
+            return ((char[]) container).length;
+        }
+        int cardinality = 0;
+        for (long word : (long[]) container) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality;
+    }
+
+    private static char[] toArray(long[] words, int cardinality) {
+        final char[] values = new char[cardinality];
+        int size = 0;
+        for (int i = 0; i < WORDS; i++) {
+            for (long word = words[i]; word != 0; word &= word - 1) {
+                values[size++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return values;
+    }
+
+    private static long[] toWords(char[] values, int size) {
+        final long[] words = new long[WORDS];
+        for (int i = 0; i < size; i++) {
+            words[values[i] >>> 6] |= 1L << values[i];
+        }
+        return words;
+    }
+
+    /**
+     * Collects ascending ids into containers.
+     */
+    static final class Builder {
+        private final List<Character> keys = new ArrayList<>();
+        private final List<Object> containers = new ArrayList<>();
+        private char[] values = new char[16];
+        private int size;
+        private int key = -1;
+
+        void add(int documentId) {
+            final int high = documentId >>> 16;
+            if (high != key) {
+                flush();
+                key = high;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = (char) documentId;
+        }
+
+        DocumentBitmap build() {
+            flush();
+            return of(keys, containers);
+        }
+
+        private void flush() {
+            if (size > 0) {
+                keys.add((char) key);
+                containers.add(size <= ARRAY_LIMIT ? Arrays.copyOf(values, size) : toWords(values, size));
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * Iterates ids in ascending order keeping the rank of the current id, which is the number of ids before it.
+     * Skipped words of dense containers are counted by popcount without visiting their bits.
+     */
+    final class Cursor {
+        private int container;
+        private int low = -1;
+        private int rankInContainer = -1;
+        private int documentId = -1;
+
+        int next() {
+            return documentId == END ? END : advance(documentId + 1);
+        }
+
+        /**
+         * @return the first id not less than the target or {@link #END}
+         */
+        int advance(int target) {
+            if (documentId >= target) {
+                return documentId;
+            }
+            final int high = target >>> 16;
+            while (container < keys.length && keys[container] < high) {
+                nextContainer();
+            }
+            if (container < keys.length && seek(keys[container] == high ? target & 0xFFFF : 0)) {
+                return documentId;
+            }
+            if (container < keys.length) {
+                nextContainer();
+            }
+            if (container < keys.length && seek(0)) {
+                return documentId;
+            }
+            return documentId = END;
+        }
+
+        int rank() {
+            return ranks[container] + rankInContainer;
+        }
+
+        private void nextContainer() {
+            container++;
+            low = -1;
+            rankInContainer = -1;
+        }
+
+        /**
+         * Moves to the first id of the current container with low bits not less than {@code from}.
+         *
+         * @return false if there is no such id
+         */
+        private boolean seek(int from) {
+            final Object values = containers[container];
+            if (values instanceof char[]) {
+                final char[] array = (char[]) values;
+                final int start = rankInContainer < 0 ? 0 : rankInContainer;
+                int index = Arrays.binarySearch(array, start, array.length, (char) from);
+                index = index < 0 ? -index - 1 : index;
+                if (index == array.length) {
+                    return false;
+                }
+                rankInContainer = index;
+                low = array[index];
+            } else {
+                final long[] words = (long[]) values;
+                final int start = low + 1;
+                final int found = nextSetBit(words, from);
+                if (found < 0) {
+                    return false;
+                }
+                rankInContainer = rankInContainer + 1 + countBits(words, start, from);
+                low = found;
+            }
+            documentId = (keys[container] << 16) | low;
+            return true;
+        }
+
+        private int nextSetBit(long[] words, int from) {
+            int index = from >>> 6;
+            if (index >= WORDS) {
+                return -1;
+            }
+            long word = words[index] & (-1L << from);
+            while (word == 0) {
+                if (++index == WORDS) {
+                    return -1;
+                }
+                word = words[index];
+            }
+            return (index << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        /**
+         * @return number of set bits in {@code [from, to)}
+         */
+        private int countBits(long[] words, int from, int to) {
+            if (from >= to) {
+                return 0;
+            }
+            final int firstWord = from >>> 6;
+            final int lastWord = (to - 1) >>> 6;
+            if (firstWord == lastWord) {
+                return Long.bitCount(words[firstWord] & (-1L << from) & (-1L >>> (-to)));
+            }
+            int count = Long.bitCount(words[firstWord] & (-1L << from));
+            for (int i = firstWord + 1; i < lastWord; i++) {
+                count += Long.bitCount(words[i]);
+            }
+            return count + Long.bitCount(words[lastWord] & (-1L >>> (-to)));
+        }
+    }
+}
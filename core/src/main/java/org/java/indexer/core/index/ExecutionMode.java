@@ -0,0 +1,19 @@
+package org.java.indexer.core.index;
+
+/**
+ * Defines which threads read files during indexing.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Files are read and tokenized by the same pool sized to the number of cores. Default option.
+     */
+    CORE_POOL,
+
+    /**
+     * Files are checked and read ahead on I/O threads: virtual threads when the JVM supports them, a bounded pool
+     * of {@link IndexSettings#getIoThreads()} threads otherwise. Tokenization stays on the core-sized pool, so
+     * I/O waits of slow file systems like NFS overlap without oversubscribing the CPU.
+     */
+    IO_THREADS
+}
@@ -0,0 +1,143 @@
+package org.java.indexer.core.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Decides whether a file is worth tokenizing before it is read completely. Files are filtered by extension allow
+ * and deny lists, by size and by content sniffing of the first {@value #SNIFF_SIZE} bytes: binary content has
+ * NUL bytes or a lot of invalid UTF-8 sequences. Content with UTF-16 byte order mark or with NUL bytes on one side
+ * of most characters is UTF-16 text.
+ */
+class FilePolicy {
+
+    static final int SNIFF_SIZE = 8 * 1024;
+    private static final double MAX_INVALID_RATIO = 0.1;
+    private static final double MIN_UTF_16_NUL_RATIO = 0.3;
+
+    private final Set<String> allowedExtensions;
+    private final Set<String> deniedExtensions;
+    private final long maxFileSize;
+    private final boolean binaryDetection;
+
+    FilePolicy(IndexSettings settings) {
+        this.allowedExtensions = normalize(settings.getAllowedExtensions());
+        this.deniedExtensions = normalize(settings.getDeniedExtensions());
+        this.maxFileSize = settings.getMaxFileSize();
+        this.binaryDetection = settings.isBinaryDetection();
+    }
+
+    boolean acceptsName(Path path) {
+        final String extension = extensionOf(path);
+        return (allowedExtensions.isEmpty() || allowedExtensions.contains(extension)) && !deniedExtensions.contains(extension);
+    }
+
+    /**
+     * @param size size in bytes or negative value if it is unknown
+     */
+    boolean acceptsSize(long size) {
+        return size <= maxFileSize;
+    }
+
+    /**
+     * Checks size and first bytes of the file, the name is checked separately.
+     */
+    boolean acceptsFile(Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (!acceptsSize(channel.size())) {
+                return false;
+            }
+            if (!binaryDetection) {
+                return true;
+            }
+            final ByteBuffer head = ByteBuffer.allocate((int) Math.min(SNIFF_SIZE, channel.size()));
+            while (head.hasRemaining()) {
+                if (channel.read(head) < 0) {
+                    break;
+                }
+            }
+            return !isBinary(head.array(), head.position());
+        }
+    }
+
+    /**
+     * @param head first bytes of the content, at most {@value #SNIFF_SIZE} are checked
+     */
+    boolean acceptsContent(byte[] head, int length) {
+        return !binaryDetection || !isBinary(head, length);
+    }
+
+    static boolean isBinary(byte[] bytes, int length) {
+        if (length >= 2 && ((bytes[0] == (byte) 0xFE && bytes[1] == (byte) 0xFF)
+                || (bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xFE))) {
+            return false;
+        }
+        int evenNuls = 0;
+        int oddNuls = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == 0) {
+                if (i % 2 == 0) {
+                    evenNuls++;
+                } else {
+                    oddNuls++;
+                }
+            }
+        }
+        if (evenNuls + oddNuls > 0) {
+            final boolean oneSided = evenNuls == 0 || oddNuls == 0;
+            return !oneSided || evenNuls + oddNuls < length * MIN_UTF_16_NUL_RATIO;
+        }
+        return countInvalidUtf8(bytes, length) > length * MAX_INVALID_RATIO;
+    }
+
+    /**
+     * @return number of bytes which are not part of valid UTF-8 sequences, sequence truncated by the end of the
+     * buffer is valid
+     */
+    private static int countInvalidUtf8(byte[] bytes, int length) {
+        int invalid = 0;
+        int i = 0;
+        while (i < length) {
+            final int lead = bytes[i] & 0xFF;
+            final int continuations = lead < 0x80 ? 0
+                    : lead >= 0xC2 && lead <= 0xDF ? 1
+                    : lead >= 0xE0 && lead <= 0xEF ? 2
+                    : lead >= 0xF0 && lead <= 0xF4 ? 3
+                    : -1;
+            if (continuations < 0) {
+                invalid++;
+                i++;
+                continue;
+            }
+            int j = 1;
+            while (j <= continuations && i + j < length && (bytes[i + j] & 0xC0) == 0x80) {
+                j++;
+            }
+            if (j <= continuations && i + j < length) {
+                invalid++;
+                i++;
+            } else {
+                i += j;
+            }
+        }
+        return invalid;
+    }
+
+    private static String extensionOf(Path path) {
+        final String name = path.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        return dot <= 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> normalize(Set<String> extensions) {
+        return extensions.stream()
+                .map(extension -> extension.replaceFirst("^\\.", "").toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+    }
+}
@@ -1,73 +1,132 @@
 package org.java.indexer.core.index;
 
 import lombok.extern.slf4j.Slf4j;
-import org.java.indexer.core.utils.FileUtils;
+import org.java.indexer.core.utils.FileTree;
+import org.java.indexer.core.utils.IgnoreRules;
 
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
-import static org.java.indexer.core.utils.FileUtils.isIgnoredFile;
 
+/**
+ * Keeps the index in sync with watched files and folders.
+ * <p>Rename or move arrives as deletion followed by creation. Files of deleted folders and deleted fingerprinted files
+ * are removed from the index right away, but their contents are kept for {@value #MOVE_DETECTION_WINDOW_MILLIS} ms.
+ * Folder created meanwhile with the same file key (e.g. inode) as a deleted one gets its files back from the kept
+ * contents. File created meanwhile with the same size is indexed in background and kept content with the same hash
+ * is reused without tokenization.
+ * <p>Watch key of a moved folder might keep watching it while reporting the old path, so every key is mapped to
+ * the current folder path. Events of a folder waiting for deletion are held back and replayed under the new path
+ * if the folder turns out to be moved.
+ */
 @Slf4j
 public class FolderWatcher implements Runnable {
 
+    private static final long MOVE_DETECTION_WINDOW_MILLIS = 300;
+
     private final WatchService watchService;
     private final Index index;
-    private final Set<String> ignoredNames;
+    private final IgnoreRules ignoreRules;
     private final Map<Path, Set<Path>> watchedPaths;
+    private final Map<WatchKey, Path> keyFolders = new ConcurrentHashMap<>();
+    private final Map<Path, Object> folderFileKeys = new ConcurrentHashMap<>();
+    private final Map<Path, PendingDeletion> pendingDeletions = new LinkedHashMap<>();
 
     private final AtomicBoolean running = new AtomicBoolean(false);
 
     public FolderWatcher(WatchService watchService, Index index, Collection<String> ignoredNames) {
         this.watchService = watchService;
         this.index = index;
-        if (ignoredNames == null || ignoredNames.isEmpty()) {
-            this.ignoredNames = Collections.emptySet();
-        } else {
-            this.ignoredNames = new HashSet<>(ignoredNames);
-        }
-        this.watchedPaths = new HashMap<>();
+        this.ignoreRules = IgnoreRules.compile(ignoredNames);
+        this.watchedPaths = new ConcurrentHashMap<>();
     }
 
     public void watch(Path path) {
-        if (Files.isRegularFile(path)) {
-            watchFile(path);
-        } else {
-            watchFolderRecursively(path);
-        }
+        watch(index.walk(path, ignoreRules));
     }
 
-    private void watchFolderRecursively(Path path) {
-        FileUtils.listFolders(path).forEach(this::watchFolder);
+    /**
+     * Watches the file or all folders of an already walked tree.
+     */
+    public void watch(FileTree tree) {
+        if (tree.isFile()) {
+            watchFile(tree.getRoot());
+        } else {
+            tree.getFolders().forEach(this::watchFolder);
+        }
     }
 
-
     private void watchFolder(Path path) {
         if (!watchedPaths.containsKey(path) || !watchedPaths.get(path).isEmpty()) {
             watchedPaths.put(path, Collections.emptySet());
             watchWithEvents(path, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            folderFileKeys.put(path, fileKeyOf(path));
             log.info("Folder {} added to watch service", path);
         } else {
             log.info("Folder {} is already in the watch service", path);
         }
     }
 
+    /**
+     * Stops watching the folder and its subfolders, their pending events are dropped.
+     */
     private void removeFolder(Path path) {
-        watchedPaths.remove(path);
+        watchedPaths.keySet().removeIf(watchedPath -> watchedPath.startsWith(path));
+        folderFileKeys.keySet().removeIf(watchedPath -> watchedPath.startsWith(path));
+        keyFolders.entrySet().removeIf(keyFolder -> {
+            if (keyFolder.getValue().startsWith(path)) {
+                keyFolder.getKey().cancel();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Maps the folder and its subfolders to the new path keeping their watch keys.
+     */
+    private void moveFolder(Path from, Path to) {
+        movePaths(watchedPaths, from, to);
+        movePaths(folderFileKeys, from, to);
+        keyFolders.replaceAll((key, folder) -> folder.startsWith(from) ? movedPath(folder, from, to) : folder);
+    }
+
+    private static <V> void movePaths(Map<Path, V> paths, Path from, Path to) {
+        final Map<Path, V> moved = new HashMap<>();
+        paths.entrySet().removeIf(entry -> {
+            if (entry.getKey().startsWith(from)) {
+                moved.put(movedPath(entry.getKey(), from, to), entry.getValue());
+                return true;
+            }
+            return false;
+        });
+        paths.putAll(moved);
+    }
+
+    private static Path movedPath(Path path, Path from, Path to) {
+        return to.resolve(from.relativize(path));
     }
 
     private void watchFile(Path path) {
@@ -91,53 +150,42 @@ public class FolderWatcher implements Runnable {
 
     private void watchWithEvents(Path path, WatchEvent.Kind<Path>... events) {
         try {
-            path.register(watchService, events);
-        } catch (IOException e) {
+            keyFolders.put(path.register(watchService, events), path);
+        } catch (IOException | ClosedWatchServiceException e) {
             log.error("Folder watcher cannot be registered", e);
         }
     }
 
 
     @Override
-    @SuppressWarnings({"SleepWhileInLoop", "unchecked"})
+    @SuppressWarnings("SleepWhileInLoop")
     public void run() {
         running.set(true);
         while (running.get()) {
             WatchKey key;
             try {
-                key = watchService.take();
-                Thread.sleep(50);
+                if (pendingDeletions.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    key = watchService.poll(MOVE_DETECTION_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (key != null) {
+                    Thread.sleep(50);
+                }
             } catch (InterruptedException e) {
                 log.info("FolderWatcher is stopped");
                 running.set(false);
                 continue;
             }
-
-            for (WatchEvent<?> event : key.pollEvents()) {
-                WatchEvent<Path> pathEvent = (WatchEvent<Path>) event;
-                final WatchEvent.Kind<Path> kind = pathEvent.kind();
-                final Path filename = pathEvent.context();
-                final Path contextPath = ((Path) key.watchable()).resolve(filename);
-                if (Files.isDirectory(contextPath) || watchedPaths.containsKey(contextPath)) {
-                    log.info("Event of type {} occurred with folder {}", kind, contextPath);
-                    processFolderEventWithIndex(kind, contextPath);
-                } else {
-                    if (isIgnoredFile(filename, ignoredNames)) {
-                        log.info("Event is ignored for file {}", filename);
-                        continue;
-                    }
-                    log.info("Event of type {} occurred with file {}", kind, contextPath);
-                    processFileEventWithIndex(kind, contextPath);
-                }
-            }
-
-            boolean valid = key.reset();
-            if (!valid) {
-                Path watchedFolder = (Path) key.watchable();
-                this.removeFolder(watchedFolder);
-                index.removeFolder(watchedFolder);
-                log.info("Token is invalid, folder {} is not being watched anymore", watchedFolder);
+            if (key != null) {
+                processEvents(key);
             }
+            applyExpiredDeletions();
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.error("Watch service cannot be closed", e);
         }
     }
 
@@ -145,12 +193,65 @@ public class FolderWatcher implements Runnable {
         running.set(false);
     }
 
+    /**
+     * Events of cancelled keys of removed folders are dropped. Events of a folder which is no longer found
+     * under its path are held back until the folder is found under the new path or its deletion is applied.
+     */
+    @SuppressWarnings("unchecked")
+    private void processEvents(WatchKey key) {
+        final Path watchedFolder = keyFolders.getOrDefault(key, (Path) key.watchable());
+        if (!key.isValid() && !keyFolders.containsKey(key)) {
+            key.pollEvents();
+            return;
+        }
+        final List<WatchEvent<?>> events = key.pollEvents();
+        PendingDeletion movedAway = pendingFolderDeletionOf(watchedFolder);
+        if (movedAway == null && !events.isEmpty() && folderFileKeys.containsKey(watchedFolder)
+                && !Files.isDirectory(watchedFolder)) {
+            deleteFolderLater(watchedFolder);
+            movedAway = pendingDeletions.get(watchedFolder);
+        }
+        for (WatchEvent<?> event : events) {
+            final WatchEvent<Path> pathEvent = (WatchEvent<Path>) event;
+            final Path contextPath = watchedFolder.resolve(pathEvent.context());
+            if (movedAway != null) {
+                movedAway.holdBack(pathEvent.kind(), contextPath);
+            } else {
+                processEvent(pathEvent.kind(), contextPath);
+            }
+        }
+
+        boolean valid = key.reset();
+        if (!valid && keyFolders.remove(key) != null && movedAway == null) {
+            deleteFolderLater(watchedFolder);
+            log.info("Token is invalid, folder {} is not being watched anymore", watchedFolder);
+        }
+    }
+
+    private void processEvent(WatchEvent.Kind<Path> kind, Path contextPath) {
+        if (Files.isDirectory(contextPath) || watchedPaths.containsKey(contextPath)) {
+            if (ENTRY_CREATE.equals(kind) && ignoreRules.isIgnored(contextPath, true)) {
+                log.info("Event is ignored for folder {}", contextPath);
+                return;
+            }
+            log.info("Event of type {} occurred with folder {}", kind, contextPath);
+            processFolderEventWithIndex(kind, contextPath);
+        } else {
+            if (ignoreRules.isIgnored(contextPath, false)) {
+                log.info("Event is ignored for file {}", contextPath.getFileName());
+                return;
+            }
+            log.info("Event of type {} occurred with file {}", kind, contextPath);
+            processFileEventWithIndex(kind, contextPath);
+        }
+    }
+
     private void processFileEventWithIndex(WatchEvent.Kind<Path> kind, Path contextPath) {
         final Path folderName = contextPath.getParent();
         if (watchedPaths.containsKey(folderName)) {
             final Set<Path> pathSet = watchedPaths.get(folderName);
             if (ENTRY_CREATE.equals(kind)) {
-                if (pathSet.isEmpty()) {
+                if (pathSet.isEmpty() && !moveDeletedFile(contextPath)) {
                     index.addFile(contextPath);
                 }
             } else if (ENTRY_MODIFY.equals(kind)) {
@@ -160,7 +261,7 @@ public class FolderWatcher implements Runnable {
             } else {
                 if (ENTRY_DELETE.equals(kind)) {
                     if (pathSet.isEmpty()) {
-                        index.removeFile(contextPath);
+                        deleteFileLater(contextPath);
                     } else if (pathSet.contains(contextPath)) {
                         index.removeFile(contextPath);
                         if (pathSet.remove(contextPath) && pathSet.isEmpty()) {
@@ -174,11 +275,186 @@ public class FolderWatcher implements Runnable {
 
     private void processFolderEventWithIndex(WatchEvent.Kind<Path> kind, Path contextPath) {
         if (ENTRY_CREATE.equals(kind)) {
-            this.watch(contextPath);
-            index.add(contextPath);
+            if (!moveDeletedFolder(contextPath)) {
+                final FileTree tree = index.walk(contextPath, ignoreRules);
+                this.watch(tree);
+                index.addTrees(List.of(tree));
+            }
         } else if (ENTRY_DELETE.equals(kind)) {
-            this.removeFolder(contextPath);
-            index.removeFolder(contextPath);
+            deleteFolderLater(contextPath);
+        }
+    }
+
+    /**
+     * Folder is detached from the index right away, but keeps being watched until its deletion is applied,
+     * as it might be moved.
+     */
+    private void deleteFolderLater(Path path) {
+        if (pendingFolderDeletionOf(path) == null) {
+            pendingDeletions.put(path, new PendingDeletion(path, folderFileKeys.get(path), index.detachFolder(path)));
+        }
+    }
+
+    /**
+     * Files without fingerprint cannot be recognized after move, so their contents are not kept.
+     */
+    private void deleteFileLater(Path path) {
+        final ContentFingerprint fingerprint = index.detachFile(path);
+        if (fingerprint != null) {
+            final PendingDeletion previous = pendingDeletions.put(path, new PendingDeletion(path, fingerprint, null));
+            if (previous != null) {
+                previous.apply();
+            }
+        }
+    }
+
+    /**
+     * Attaches the detached folder under the new path and moves it in the watcher, pending deletions below the folder
+     * are moved as well and events held back for the folder are replayed under the new path.
+     *
+     * @return whether the created folder is a deleted folder moved in the index
+     */
+    private boolean moveDeletedFolder(Path path) {
+        final PendingDeletion deletedAtSamePath = pendingDeletions.remove(path);
+        if (deletedAtSamePath != null) {
+            deletedAtSamePath.apply();
+        }
+        final PendingDeletion moved = findPendingDeletion(true, fileKeyOf(path));
+        if (moved == null) {
+            return false;
+        }
+        pendingDeletions.remove(moved.path);
+        final List<PendingDeletion> nestedDeletions = pendingDeletions.values().stream()
+                .filter(deletion -> deletion.path.startsWith(moved.path))
+                .collect(Collectors.toList());
+        nestedDeletions.forEach(deletion -> pendingDeletions.remove(deletion.path));
+        index.attachFolder(moved.detachedFolder, path);
+        index.releaseDetached(moved.detachedFolder);
+        moveFolder(moved.path, path);
+        nestedDeletions.forEach(deletion -> {
+            final PendingDeletion movedDeletion = deletion.moved(moved.path, path);
+            pendingDeletions.put(movedDeletion.path, movedDeletion);
+        });
+        this.watch(path);
+        log.info("Folder {} is moved to {}", moved.path, path);
+        moved.heldBackEvents.forEach((eventPath, kind) -> processEvent(kind, movedPath(eventPath, moved.path, path)));
+        return true;
+    }
+
+    /**
+     * Created file is not read on the watcher thread. If its size matches a deleted file, it is indexed in background
+     * while the deleted contents are kept, so the index reuses the content with the same hash. Contents of the
+     * matching deletions are released once the file is indexed.
+     *
+     * @return whether the created file is indexed in background
+     */
+    private boolean moveDeletedFile(Path path) {
+        final long size = sizeOf(path);
+        final List<PendingDeletion> candidates = pendingDeletions.values().stream()
+                .filter(deletion -> !deletion.folder && ((ContentFingerprint) deletion.identity).getSize() == size)
+                .collect(Collectors.toList());
+        final PendingDeletion deletedAtSamePath = pendingDeletions.get(path);
+        if (deletedAtSamePath != null && !candidates.contains(deletedAtSamePath)) {
+            pendingDeletions.remove(path);
+            deletedAtSamePath.apply();
+        }
+        if (candidates.isEmpty()) {
+            return false;
+        }
+        candidates.forEach(candidate -> pendingDeletions.remove(candidate.path));
+        index.add(path).getCompletion().whenComplete((job, throwable) -> candidates.forEach(PendingDeletion::apply));
+        log.info("File {} might be moved, it is indexed in background", path);
+        return true;
+    }
+
+    private PendingDeletion findPendingDeletion(boolean folder, Object identity) {
+        if (identity == null) {
+            return null;
+        }
+        return pendingDeletions.values().stream()
+                .filter(deletion -> deletion.folder == folder && identity.equals(deletion.identity))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private PendingDeletion pendingFolderDeletionOf(Path path) {
+        return pendingDeletions.values().stream()
+                .filter(deletion -> deletion.folder && path.startsWith(deletion.path))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void applyExpiredDeletions() {
+        final long now = System.nanoTime();
+        final List<PendingDeletion> expired = new ArrayList<>();
+        pendingDeletions.values().removeIf(deletion -> now - deletion.deadline >= 0 && expired.add(deletion));
+        expired.forEach(PendingDeletion::apply);
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static Object fileKeyOf(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletion of a detached folder identified by its file key or of a detached file identified by its content
+     * fingerprint.
+     */
+    private class PendingDeletion {
+        private final Path path;
+        private final boolean folder;
+        private final Object identity;
+        /**
+         * Files of the folder removed from the index, null for a file.
+         */
+        private final DetachedFolder detachedFolder;
+        private final long deadline;
+        private final Map<Path, WatchEvent.Kind<Path>> heldBackEvents = new LinkedHashMap<>();
+
+        private PendingDeletion(Path path, Object identity, DetachedFolder detachedFolder) {
+            this(path, identity, detachedFolder, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MOVE_DETECTION_WINDOW_MILLIS));
+        }
+
+        private PendingDeletion(Path path, Object identity, DetachedFolder detachedFolder, long deadline) {
+            this.path = path;
+            this.folder = detachedFolder != null;
+            this.identity = identity;
+            this.detachedFolder = detachedFolder;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Keeps the last event of every path, as only the final state of the path matters.
+         */
+        private void holdBack(WatchEvent.Kind<Path> kind, Path eventPath) {
+            heldBackEvents.remove(eventPath);
+            heldBackEvents.put(eventPath, kind);
+        }
+
+        private PendingDeletion moved(Path from, Path to) {
+            final PendingDeletion moved = new PendingDeletion(movedPath(path, from, to), identity, detachedFolder, deadline);
+            heldBackEvents.forEach((eventPath, kind) -> moved.holdBack(kind, movedPath(eventPath, from, to)));
+            return moved;
+        }
+
+        private void apply() {
+            if (folder) {
+                removeFolder(path);
+                index.releaseDetached(detachedFolder);
+            } else {
+                index.releaseDetached((ContentFingerprint) identity);
+            }
         }
     }
 }
@@ -1,5 +1,7 @@
 package org.java.indexer.core.index;
 
+import org.java.indexer.core.utils.FileTree;
+
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
@@ -8,6 +10,7 @@ import java.util.Collection;
 public class FolderWatcherService {
 
     private final FolderWatcher folderWatcher;
+    private final Thread thread;
 
     public FolderWatcherService(Collection<String> ignoredNames, Index index) {
         try {
@@ -15,7 +18,7 @@ public class FolderWatcherService {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        final Thread thread = new Thread(folderWatcher);
+        thread = new Thread(folderWatcher, "jinx-folder-watcher");
         thread.setDaemon(true);
         thread.start();
     }
@@ -24,7 +27,15 @@ public class FolderWatcherService {
         folderWatcher.watch(path);
     }
 
+    public void watch(FileTree tree) {
+        folderWatcher.watch(tree);
+    }
+
+    /**
+     * Stops the watcher and interrupts its thread waiting for file events.
+     */
     public void stop() {
         folderWatcher.stop();
+        thread.interrupt();
     }
 }
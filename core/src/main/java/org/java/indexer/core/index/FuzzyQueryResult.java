@@ -0,0 +1,37 @@
+package org.java.indexer.core.index;
+
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+
+import java.util.Map;
+
+@Value
+public class FuzzyQueryResult {
+
+    String queryString;
+    int maxEdits;
+    Integer totalOccurrencesCount;
+    /**
+     * Results of matched token variants, closest variants first.
+     */
+    Map<String, QueryResult> variants;
+    /**
+     * Query ran out of time and some variants or files were not searched.
+     */
+    boolean partial;
+    /**
+     * Wall-clock time of the query, not a part of the result equality.
+     */
+    @EqualsAndHashCode.Exclude
+    long tookMillis;
+
+    public FuzzyQueryResult(String queryString, int maxEdits, Map<String, QueryResult> variants,
+                            boolean partial, long tookMillis) {
+        this.queryString = queryString;
+        this.maxEdits = maxEdits;
+        this.variants = variants;
+        this.partial = partial;
+        this.tookMillis = tookMillis;
+        totalOccurrencesCount = variants.values().stream().map(QueryResult::getTotalOccurrencesCount).reduce(0, Integer::sum);
+    }
+}
@@ -1,156 +1,1106 @@
 package org.java.indexer.core.index;
 
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.java.indexer.core.tokenizer.RegexTokenizer;
+import org.java.indexer.core.tokenizer.StreamingTokenizer;
+import org.java.indexer.core.tokenizer.TokenCounter;
+import org.java.indexer.core.tokenizer.TokenSink;
 import org.java.indexer.core.tokenizer.Tokenizer;
+import org.java.indexer.core.utils.FileTree;
+import org.java.indexer.core.utils.IgnoreRules;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.AbstractMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-
-import static org.java.indexer.core.utils.FileUtils.listFiles;
+import java.util.stream.IntStream;
 
 @Slf4j
 public class Index {
 
-    private final Tokenizer tokenizer;
-    private final ConcurrentHashMap<Path, IndexedFile> indexedFiles;
-    private final Set<String> ignoredNames;
-    private final Lock writeLock;
-    private final Lock readLock;
+    private static final int MAX_FUZZY_VARIANTS = 50;
+    private static final int MAX_SUBSTRING_MATCHES = 100;
+    /**
+     * Files up to this size are read into memory by I/O threads in {@link ExecutionMode#IO_THREADS} mode,
+     * larger files are read by the tokenizer.
+     */
+    private static final int READ_AHEAD_LIMIT = 4 * 1024 * 1024;
+    /**
+     * Kilobytes of read ahead content waiting for tokenization. Once it is exhausted, files are read by the tokenizer.
+     */
+    private static final int READ_AHEAD_BUDGET_KB = 64 * 1024;
+
+    private final StreamingTokenizer tokenizer;
+    private final ContentRegistry contentRegistry;
+    private final boolean deduplication;
+    private final FilePolicy filePolicy;
+    private final IndexShard[] shards;
+    private final IgnoreRules ignoreRules;
     private final ExecutorService indexExecutorService;
+    private final ForkJoinPool walkExecutorService;
+    /**
+     * Checks and reads ahead files in {@link ExecutionMode#IO_THREADS} mode, null otherwise.
+     */
+    private final IoExecutor ioExecutor;
+    private final Semaphore readAheadBudget = new Semaphore(READ_AHEAD_BUDGET_KB);
+    private final ScheduledExecutorService maintenanceExecutorService;
+    private final Set<IndexingJob> activeJobs = ConcurrentHashMap.newKeySet();
+    /**
+     * Checksums of indexed entries by archive path, used to find entries changed since the last indexing.
+     */
+    private final Map<Path, Map<Path, ContentFingerprint>> archiveEntries = new ConcurrentHashMap<>();
+    /**
+     * Held for reading by queries over all shards and for writing while all shards are updated at once.
+     */
+    private final ReadWriteLock publishLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
 
     public Index(Collection<String> ignoredNames) {
-        if (ignoredNames == null || ignoredNames.isEmpty()) {
-            this.ignoredNames = Collections.emptySet();
-        } else {
-            this.ignoredNames = new HashSet<>(ignoredNames);
-        }
-        this.tokenizer = new RegexTokenizer();
-        this.indexedFiles = new ConcurrentHashMap<>();
-        final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-        writeLock = readWriteLock.writeLock();
-        readLock = readWriteLock.readLock();
-        indexExecutorService = Executors.newWorkStealingPool();
+        this(ignoredNames, new RegexTokenizer());
     }
 
     public Index(Collection<String> ignoredNames, Pattern regEx) {
-        if (ignoredNames == null || ignoredNames.isEmpty()) {
-            this.ignoredNames = Collections.emptySet();
-        } else {
-            this.ignoredNames = new HashSet<>(ignoredNames);
-        }
-        this.tokenizer = new RegexTokenizer(regEx);
-        this.indexedFiles = new ConcurrentHashMap<>();
-        final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-        writeLock = readWriteLock.writeLock();
-        readLock = readWriteLock.readLock();
-        indexExecutorService = Executors.newWorkStealingPool();
+        this(ignoredNames, new RegexTokenizer(regEx));
     }
 
     public Index(Collection<String> ignoredNames, Tokenizer tokenizer) {
-        if (ignoredNames == null || ignoredNames.isEmpty()) {
-            this.ignoredNames = Collections.emptySet();
-        } else {
-            this.ignoredNames = new HashSet<>(ignoredNames);
+        this(ignoredNames, tokenizer, IndexSettings.DEFAULT);
+    }
+
+    public Index(Collection<String> ignoredNames, Tokenizer tokenizer, IndexSettings settings) {
+        this.ignoreRules = IgnoreRules.compile(ignoredNames);
+        this.tokenizer = StreamingTokenizer.of(tokenizer);
+        this.contentRegistry = new ContentRegistry(new OnHeapTokenStorage(), settings.isSubstringIndex());
+        this.deduplication = settings.isDeduplication();
+        this.filePolicy = new FilePolicy(settings);
+        this.maintenanceExecutorService = Executors.newScheduledThreadPool(Math.max(1, settings.getMergeThreads()), runnable -> {
+            final Thread thread = new Thread(runnable, "jinx-segment-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.shards = new IndexShard[Math.max(1, settings.getShards())];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new IndexShard(contentRegistry, settings, maintenanceExecutorService);
         }
-        this.tokenizer = tokenizer;
-        this.indexedFiles = new ConcurrentHashMap<>();
-        final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-        writeLock = readWriteLock.writeLock();
-        readLock = readWriteLock.readLock();
-        indexExecutorService = Executors.newWorkStealingPool();
+        maintenanceExecutorService.scheduleWithFixedDelay(() -> Arrays.stream(shards).forEach(IndexShard::requestMaintenance),
+                settings.getFlushIntervalMillis(), settings.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+        indexExecutorService = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("jinx-indexer-" + thread.getPoolIndex());
+            return thread;
+        }, null, true);
+        walkExecutorService = FileTree.newWalkPool();
+        ioExecutor = settings.getExecutionMode() == ExecutionMode.IO_THREADS ? new IoExecutor(settings.getIoThreads()) : null;
+    }
+
+    public IndexingJob add(Path path) {
+        return add(List.of(path));
+    }
+
+    /**
+     * Lists files of the folders in the calling thread and tokenizes them in background.
+     * Closed index returns cancelled job.
+     */
+    public IndexingJob add(Collection<Path> paths) {
+        return addTrees(walk(paths));
     }
 
-    public void add(Path path) {
-        if (Files.isRegularFile(path)) {
-            indexExecutorService.submit(() -> addFile(path));
-            log.info("File {} added to index", path);
-        } else {
-            listFiles(path, ignoredNames).forEach(filePath -> indexExecutorService.submit(() -> addFile(filePath)));
-            log.info("Folder {} added to index", path);
+    /**
+     * Lists the folder by a parallel walk skipping ignored files and folders, a file is returned as a single file tree.
+     */
+    public FileTree walk(Path path) {
+        return walk(path, ignoreRules);
+    }
+
+    /**
+     * Same as {@link #walk(Path)} for several paths.
+     *
+     * @return walked trees or no trees if the index is closed meanwhile, so indexing them gives cancelled job
+     */
+    public List<FileTree> walk(Collection<Path> paths) {
+        try {
+            return paths.stream().map(this::walk).collect(Collectors.toList());
+        } catch (RejectedExecutionException | CancellationException e) {
+            log.info("Index is closed, folders are not walked");
+            return List.of();
         }
     }
 
-    void removeFolder(Path folderPath) {
-        writeLock.lock();
+    /**
+     * Walks the folder on the walk pool of the index, see {@link #walk(Path)}.
+     */
+    FileTree walk(Path path, IgnoreRules ignoreRules) {
+        return Files.isRegularFile(path) ? FileTree.ofFile(path) : FileTree.walk(path, ignoreRules, walkExecutorService);
+    }
+
+    /**
+     * Tokenizes files of already walked trees in background, so the same walk might be used to watch the folders.
+     * Closed index returns cancelled job.
+     */
+    public IndexingJob addTrees(Collection<FileTree> trees) {
+        final IndexingJob job = startJob();
         try {
-            indexedFiles.entrySet().removeIf(pathIndexedFileEntry -> pathIndexedFileEntry.getKey().startsWith(folderPath.toString()));
-        } finally {
-            writeLock.unlock();
+            for (FileTree tree : trees) {
+                if (job.isCancelled()) {
+                    break;
+                }
+                tree.getFiles().forEach(filePath -> submitFile(filePath, job));
+                log.info("{} {} added to index", tree.isFile() ? "File" : "Folder", tree.getRoot());
+            }
+        } catch (RejectedExecutionException e) {
+            log.info("Index is closed, indexing is cancelled");
+            job.cancel();
+        }
+        job.submissionFinished();
+        return job;
+    }
+
+    void removeFolder(Path folderPath) {
+        archiveEntries.keySet().removeIf(archivePath -> archivePath.startsWith(folderPath));
+        for (IndexShard shard : shards) {
+            shard.removeFolder(folderPath);
         }
         log.info("Folder {} removed from index", folderPath);
     }
 
-    void addFile(Path filePath) {
-        final Map<String, Integer> tokenizedFile;
+    /**
+     * Removes all indexed files of the folder right away keeping references to their stored tokens, so the folder
+     * found under another path meanwhile is attached by {@link #attachFolder} without tokenizing its files again.
+     * The references are dropped by {@link #releaseDetached(DetachedFolder)}.
+     */
+    DetachedFolder detachFolder(Path folderPath) {
+        final List<IndexedFile> indexedFiles = new ArrayList<>();
+        for (IndexShard shard : shards) {
+            shard.collectFilesInFolder(folderPath, indexedFiles);
+        }
+        final List<IndexedFile> files = new ArrayList<>();
+        final List<Path> unfingerprintedFiles = new ArrayList<>();
+        for (IndexedFile indexedFile : indexedFiles) {
+            if (indexedFile.getFingerprint() != null && contentRegistry.retain(indexedFile.getFingerprint()) != null) {
+                files.add(indexedFile);
+            } else {
+                unfingerprintedFiles.add(indexedFile.getPath());
+            }
+        }
+        final Map<Path, Map<Path, ContentFingerprint>> detachedArchives = new HashMap<>();
+        archiveEntries.forEach((archivePath, entries) -> {
+            if (archivePath.startsWith(folderPath)) {
+                detachedArchives.put(archivePath, entries);
+            }
+        });
+        removeFolder(folderPath);
+        return new DetachedFolder(folderPath, files, unfingerprintedFiles, detachedArchives);
+    }
+
+    /**
+     * Puts files of the detached folder under the new path, files renamed to extensions excluded by the file policy
+     * are skipped. Files without fingerprint are indexed again in background.
+     *
+     * @return number of attached files, archive entries are counted as files
+     */
+    int attachFolder(DetachedFolder folder, Path to) {
+        int attachedFiles = 0;
+        for (IndexedFile detachedFile : folder.getFiles()) {
+            final Path newPath = movedPath(detachedFile.getPath(), folder.getPath(), to);
+            if (!filePolicy.acceptsName(newPath)) {
+                continue;
+            }
+            final Map<String, Integer> storedTokens = contentRegistry.acquire(detachedFile.getFingerprint(), detachedFile::getCountedTokens);
+            shardOf(newPath).put(new IndexedFile(UUID.randomUUID(), newPath, storedTokens, detachedFile.getFingerprint()));
+            attachedFiles++;
+        }
+        folder.getArchiveEntries().forEach((archivePath, entries) -> {
+            final Map<Path, ContentFingerprint> movedEntries = new HashMap<>();
+            entries.forEach((entryPath, checksum) -> movedEntries.put(movedPath(entryPath, folder.getPath(), to), checksum));
+            archiveEntries.put(movedPath(archivePath, folder.getPath(), to), movedEntries);
+        });
+        if (!folder.getUnfingerprintedFiles().isEmpty()) {
+            add(folder.getUnfingerprintedFiles().stream()
+                    .map(path -> movedPath(path, folder.getPath(), to))
+                    .collect(Collectors.toList()));
+        }
+        log.info("{} files attached from {} to {} in index", attachedFiles, folder.getPath(), to);
+        return attachedFiles;
+    }
+
+    void releaseDetached(DetachedFolder folder) {
+        folder.getFiles().forEach(file -> contentRegistry.releaseRetained(file.getFingerprint()));
+    }
+
+    /**
+     * Removes the file from the index keeping a reference to its stored tokens, so the file indexed again
+     * under another path meanwhile is not tokenized. The reference is dropped by {@link #releaseDetached}.
+     *
+     * @return fingerprint of the detached content or null if the file is not indexed or not fingerprinted
+     */
+    ContentFingerprint detachFile(Path filePath) {
+        final IndexedFile indexedFile = shardOf(filePath).get(filePath);
+        final ContentFingerprint fingerprint = indexedFile == null ? null : indexedFile.getFingerprint();
+        final boolean retained = fingerprint != null && contentRegistry.retain(fingerprint) != null;
+        removeFile(filePath);
+        return retained ? fingerprint : null;
+    }
+
+    void releaseDetached(ContentFingerprint fingerprint) {
+        contentRegistry.releaseRetained(fingerprint);
+    }
+
+    private static Path movedPath(Path path, Path from, Path to) {
+        return to.resolve(from.relativize(path));
+    }
+
+    /**
+     * Indexes files and folders as a single batch. Every worker thread tokenizes its part of the files into its own
+     * partial index without taking shard locks, previously indexed versions of the files are collected once beforehand.
+     * New contents and term statistics are kept by every worker and counted in the shared registry at once.
+     * Partial indexes are merged into one segment per shard at the end.
+     * Segments are published to all shards at once, so queries see either none or all of the loaded files.
+     * Returns completed job when the files are published or cancelled job if the index is closed meanwhile.
+     */
+    public IndexingJob bulkLoad(Collection<Path> paths) {
+        return bulkLoadTrees(walk(paths));
+    }
+
+    /**
+     * Same as {@link #bulkLoad} for files of already walked trees.
+     */
+    public IndexingJob bulkLoadTrees(Collection<FileTree> trees) {
+        final IndexingJob job = startJob();
+        if (job.isCancelled()) {
+            return job;
+        }
+        final Set<Path> uniqueFiles = new LinkedHashSet<>();
+        for (FileTree tree : trees) {
+            uniqueFiles.addAll(tree.getFiles());
+        }
+        final List<Path> files = new ArrayList<>(uniqueFiles);
+        files.forEach(filePath -> job.fileDiscovered());
+        final int workers = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        final int readAheadFiles = ioExecutor != null ? ioExecutor.getMaxReads() / workers : 0;
+        final Map<Path, IndexedFile> indexedFiles = collectIndexedFiles(trees);
+        final List<ContentBatch> batches = new ArrayList<>(workers);
+        final List<Callable<List<List<IndexedFile>>>> partialIndexTasks = new ArrayList<>(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            final List<Path> workerFiles = files.subList(files.size() * worker / workers, files.size() * (worker + 1) / workers);
+            final ContentBatch batch = new ContentBatch(contentRegistry);
+            batches.add(batch);
+            partialIndexTasks.add(() -> {
+                try {
+                    return buildPartialIndex(workerFiles, job, readAheadFiles, indexedFiles, batch);
+                } finally {
+                    batch.finish();
+                }
+            });
+        }
+
+        final List<List<IndexedFile>> shardFiles = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            shardFiles.add(new ArrayList<>());
+        }
+        boolean registered = false;
         try {
-            tokenizedFile = tokenizer.tokenize(filePath);
-        } catch (Exception e) {
-            log.error("Something went wrong during tokenization, file {} was not indexed", filePath, e);
+            for (Future<List<List<IndexedFile>>> partialIndex : indexExecutorService.invokeAll(partialIndexTasks)) {
+                final List<List<IndexedFile>> partialShardFiles = partialIndex.get();
+                for (int i = 0; i < shards.length; i++) {
+                    shardFiles.get(i).addAll(partialShardFiles.get(i));
+                }
+            }
+            registerBatches(batches, shardFiles);
+            registered = true;
+        } catch (RejectedExecutionException | CancellationException e) {
+            log.info("Index is closed, bulk load is cancelled");
+            job.cancel();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Bulk load is interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Bulk load failed", e.getCause());
+        } finally {
+            if (!registered) {
+                // workers cancelled by the closed executor may still be running, they release their batches when finished
+                batches.forEach(ContentBatch::discard);
+            }
+        }
+        if (job.isCancelled()) {
+            if (registered) {
+                shardFiles.forEach(cancelledFiles -> cancelledFiles.forEach(contentRegistry::release));
+            }
+            return job;
+        }
+
+        final Segment[] segments = buildSegments(shardFiles);
+        updateAllShards(() -> {
+            for (int i = 0; i < shards.length; i++) {
+                shards[i].publish(segments[i]);
+            }
+        });
+        Arrays.stream(shards).forEach(IndexShard::requestMaintenance);
+        job.submissionFinished();
+        log.info("{} files are bulk loaded to index", files.size());
+        return job;
+    }
+
+    /**
+     * Collects indexed files of the trees once, so bulk load workers find previous versions of their files
+     * without locking the shards.
+     */
+    private Map<Path, IndexedFile> collectIndexedFiles(Collection<FileTree> trees) {
+        final List<IndexedFile> files = new ArrayList<>();
+        for (FileTree tree : trees) {
+            for (IndexShard shard : shards) {
+                shard.collectFilesInFolder(tree.getRoot(), files);
+            }
+        }
+        final Map<Path, IndexedFile> indexedFiles = new HashMap<>(files.size() * 2);
+        files.forEach(file -> indexedFiles.put(file.getPath(), file));
+        return indexedFiles;
+    }
+
+    /**
+     * Registers contents of bulk load workers at once, files referring to copies of already registered contents
+     * are changed to refer to the registered ones.
+     */
+    private void registerBatches(List<ContentBatch> batches, List<List<IndexedFile>> shardFiles) {
+        final Map<Map<String, Integer>, Map<String, Integer>> replacements = contentRegistry.register(batches);
+        if (replacements.isEmpty()) {
             return;
         }
-        writeLock.lock();
+        shardFiles.forEach(files -> files.replaceAll(file -> {
+            final Map<String, Integer> replacement = replacements.get(file.getCountedTokens());
+            return replacement == null ? file
+                    : new IndexedFile(file.getId(), file.getPath(), replacement, file.getFingerprint());
+        }));
+    }
+
+    /**
+     * Runs the update holding write locks of all shards and the publish lock, so queries see either none or all
+     * of its changes.
+     */
+    private void updateAllShards(Runnable update) {
+        publishLock.writeLock().lock();
         try {
-            indexedFiles.compute(filePath,
-                    (path1, indexedFile) -> new IndexedFile(UUID.randomUUID(), filePath, tokenizedFile));
+            for (IndexShard shard : shards) {
+                shard.getWriteLock().lock();
+            }
+            try {
+                update.run();
+            } finally {
+                for (IndexShard shard : shards) {
+                    shard.getWriteLock().unlock();
+                }
+            }
         } finally {
-            writeLock.unlock();
+            publishLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds segments of files grouped by shard number in parallel.
+     */
+    private Segment[] buildSegments(List<List<IndexedFile>> shardFiles) {
+        final Segment[] segments = new Segment[shards.length];
+        IntStream.range(0, shards.length).parallel()
+                .forEach(i -> segments[i] = Segment.build(shardFiles.get(i)));
+        return segments;
+    }
+
+    void addFile(Path filePath) {
+        addFile(filePath, new IndexingJob());
+    }
+
+    private void addFile(Path filePath, IndexingJob job) {
+        if (!filePolicy.acceptsName(filePath)) {
+            log.info("File {} is excluded by extension", filePath);
+            job.fileExcluded();
+            return;
+        }
+        if (Archive.isArchive(filePath)) {
+            tokenizeArchive(filePath, job).forEach(entry -> {
+                shardOf(entry.getPath()).put(entry);
+                job.fileTokenized();
+            });
+            log.info("Archive {} is in the index", filePath);
+            return;
+        }
+        putFile(tokenizeFile(filePath, job), job);
+    }
+
+    private void putFile(IndexedFile indexedFile, IndexingJob job) {
+        if (indexedFile != null) {
+            shardOf(indexedFile.getPath()).put(indexedFile);
+            job.fileTokenized();
+            log.info("File {} is in the index", indexedFile.getPath());
         }
-        log.info("File {} is in the index", filePath);
     }
 
     void removeFile(Path filePath) {
-        writeLock.lock();
-        try {
-            indexedFiles.remove(filePath);
-        } finally {
-            writeLock.unlock();
+        if (archiveEntries.remove(filePath) != null) {
+            final Path archiveRoot = Archive.rootOf(filePath);
+            for (IndexShard shard : shards) {
+                shard.removeFolder(archiveRoot);
+            }
         }
+        shardOf(filePath).remove(filePath);
         log.info("File {} removed from index", filePath);
     }
 
+    /**
+     * Queries all shards in parallel on the common pool and merges their results.
+     */
     public QueryResult queryToken(String token) {
+        return queryToken(token, null);
+    }
+
+    /**
+     * Shards are queried in parallel within the timeout, once it is reached the result is marked partial
+     * and contains occurrences found so far.
+     *
+     * @param timeout time budget of the query, null means the query is not bounded
+     */
+    public QueryResult queryToken(String token, Duration timeout) {
         log.info("Looking for token \"{}\" in the index", token);
+        final QueryDeadline deadline = QueryDeadline.after(timeout);
+        final Map<String, Integer> occurrences = queryShards(List.of(token), BooleanOperator.OR, deadline);
+        return new QueryResult(token, occurrences, deadline.isPartial(), deadline.elapsedMillis());
+    }
+
+    /**
+     * Finds files containing all the tokens or any of them. Occurrences of a file are the sum of occurrences
+     * of the tokens found in it.
+     *
+     * @param timeout time budget of the query, null means the query is not bounded
+     */
+    public QueryResult queryBoolean(List<String> tokens, BooleanOperator operator, Duration timeout) {
+        final List<String> distinctTokens = List.copyOf(new LinkedHashSet<>(tokens));
+        final String queryString = String.join(" " + operator + " ", distinctTokens);
+        log.info("Looking for tokens \"{}\" in the index", queryString);
+        final QueryDeadline deadline = QueryDeadline.after(timeout);
+        final Map<String, Integer> occurrences = queryShards(distinctTokens, operator, deadline);
+        return new QueryResult(queryString, occurrences, deadline.isPartial(), deadline.elapsedMillis());
+    }
+
+    private Map<String, Integer> queryShards(List<String> tokens, BooleanOperator operator, QueryDeadline deadline) {
         try {
-            if (readLock.tryLock(5, TimeUnit.SECONDS)) {
-                final Map<String, Integer> occurrenceMap = indexedFiles.values().stream()
-                        .map(indexedFile -> new AbstractMap.SimpleEntry<>(indexedFile.getPath(), indexedFile.query(token)))
-                        .filter(entry -> entry.getValue() != 0)
-                        .collect(Collectors.toMap(entry -> entry.getKey().toString(), AbstractMap.SimpleEntry::getValue));
-                return new QueryResult(token, occurrenceMap);
-            } else {
-                throw new RuntimeException("Index is being updated, try later");
+            if (!publishLock.readLock().tryLock(deadline.remainingNanos(), TimeUnit.NANOSECONDS)) {
+                deadline.expire();
+                deadline.skip();
+                return Map.of();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        try {
+            return queryLockedShards(tokens, operator, deadline);
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Integer> queryLockedShards(List<String> tokens, BooleanOperator operator, QueryDeadline deadline) {
+        final List<CompletableFuture<Map<String, Integer>>> shardResults = Arrays.stream(shards)
+                .map(shard -> CompletableFuture.supplyAsync(() -> shard.query(tokens, operator, deadline)))
+                .collect(Collectors.toList());
+        final Map<String, Integer> occurrenceMap = new HashMap<>();
+        try {
+            for (CompletableFuture<Map<String, Integer>> shardResult : shardResults) {
+                occurrenceMap.putAll(shardResult.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS));
+            }
+        } catch (TimeoutException e) {
+            deadline.expire();
+            for (CompletableFuture<Map<String, Integer>> shardResult : shardResults) {
+                if (shardResult.isDone() && !shardResult.isCompletedExceptionally()) {
+                    occurrenceMap.putAll(shardResult.join());
+                } else {
+                    deadline.skip();
+                }
             }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        }
+        return occurrenceMap;
+    }
+
+    /**
+     * Finds indexed tokens within {@code maxEdits} insertions, deletions, substitutions or transpositions of adjacent
+     * characters from the token and queries them. At most {@value #MAX_FUZZY_VARIANTS} closest variants are queried,
+     * variants at the same distance are ordered by number of files containing them.
+     *
+     * @param timeout time budget of the whole query, variants left when it is reached are not queried
+     */
+    public FuzzyQueryResult queryFuzzy(String token, int maxEdits, Duration timeout) {
+        log.info("Looking for tokens within {} edits from \"{}\" in the index", maxEdits, token);
+        final QueryDeadline deadline = QueryDeadline.after(timeout);
+        final TermDictionary termDictionary = contentRegistry.getTermDictionary();
+        final Map<String, Integer> distances = termDictionary.findSimilar(token, maxEdits);
+        final List<String> variants = distances.keySet().stream()
+                .sorted(Comparator.<String>comparingInt(distances::get)
+                        .thenComparing(Comparator.comparingInt(termDictionary::documentFrequency).reversed())
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(MAX_FUZZY_VARIANTS)
+                .collect(Collectors.toList());
+        final Map<String, QueryResult> results = queryTokens(variants, deadline);
+        return new FuzzyQueryResult(token, maxEdits, results, deadline.isPartial(), deadline.elapsedMillis());
+    }
+
+    /**
+     * Finds indexed tokens containing the fragment and queries them. At most {@value #MAX_SUBSTRING_MATCHES}
+     * tokens contained in the largest number of files are queried.
+     *
+     * @param timeout time budget of the whole query, matches left when it is reached are not queried
+     */
+    public SubstringQueryResult querySubstring(String fragment, Duration timeout) {
+        log.info("Looking for tokens containing \"{}\" in the index", fragment);
+        final QueryDeadline deadline = QueryDeadline.after(timeout);
+        final Map<String, Integer> frequencies = contentRegistry.getTermDictionary().findContaining(fragment);
+        final List<String> matches = frequencies.keySet().stream()
+                .sorted(Comparator.<String>comparingInt(frequencies::get).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(MAX_SUBSTRING_MATCHES)
+                .collect(Collectors.toList());
+        final Map<String, QueryResult> results = queryTokens(matches, deadline);
+        return new SubstringQueryResult(fragment, results, deadline.isPartial(), deadline.elapsedMillis());
+    }
+
+    /**
+     * Statistics are maintained incrementally as files are added and removed, so no files are scanned.
+     */
+    public TermStatistics termStatistics(String token) {
+        return contentRegistry.getTermDictionary().statistics(token);
+    }
+
+    /**
+     * @return at most {@code k} tokens contained in the largest number of files, ties are broken by total frequency
+     */
+    public List<TermStatistics> topTokens(int k) {
+        return contentRegistry.getTermDictionary().top(k);
+    }
+
+    /**
+     * Queries tokens one by one sharing the deadline, tokens without occurrences are omitted.
+     */
+    private Map<String, QueryResult> queryTokens(List<String> tokens, QueryDeadline deadline) {
+        final Map<String, QueryResult> results = new LinkedHashMap<>();
+        for (String token : tokens) {
+            if (deadline.isExpired()) {
+                deadline.skip();
+                break;
+            }
+            final long started = System.nanoTime();
+            final Map<String, Integer> occurrences = queryShards(List.of(token), BooleanOperator.OR, deadline);
+            if (!occurrences.isEmpty()) {
+                results.put(token, new QueryResult(token, occurrences, deadline.isPartial(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Writes current index state to the file. Files are collected at a single point in time holding all shard read
+     * locks, writing itself does not block index updates.
+     *
+     * @see IndexSnapshot
+     */
+    public void exportSnapshot(Path target) throws IOException {
+        final List<IndexedFile> files = new ArrayList<>();
+        final Map<Path, Map<Path, ContentFingerprint>> archives;
+        for (IndexShard shard : shards) {
+            shard.getReadLock().lock();
+        }
+        try {
+            for (IndexShard shard : shards) {
+                shard.collectFiles(files);
+            }
+            archives = new HashMap<>(archiveEntries);
         } finally {
-            readLock.unlock();
+            for (IndexShard shard : shards) {
+                shard.getReadLock().unlock();
+            }
         }
+        IndexSnapshot.write(target, files, archives);
+        log.info("Index snapshot with {} files exported to {}", files.size(), target);
+    }
+
+    /**
+     * Replaces current index state with the state read from the snapshot file. Segments of the imported files are
+     * built aside and replace contents of all shards at once, so queries see either the previous or the imported
+     * state. Index is left unchanged if the snapshot cannot be read.
+     *
+     * @see IndexSnapshot
+     */
+    public void importSnapshot(Path source) throws IOException {
+        final IndexSnapshot snapshot = IndexSnapshot.read(source);
+        final List<List<IndexedFile>> shardFiles = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            shardFiles.add(new ArrayList<>());
+        }
+        final Segment[] segments;
+        try {
+            for (IndexedFile file : snapshot.getFiles()) {
+                final ContentFingerprint fingerprint = deduplication ? file.getFingerprint() : null;
+                final Map<String, Integer> storedTokens = contentRegistry.acquire(fingerprint, file::getCountedTokens);
+                shardFiles.get(shardNumber(file.getPath()))
+                        .add(new IndexedFile(file.getId(), file.getPath(), storedTokens, fingerprint));
+            }
+            segments = buildSegments(shardFiles);
+        } catch (RuntimeException e) {
+            shardFiles.forEach(importedFiles -> importedFiles.forEach(contentRegistry::release));
+            throw e;
+        }
+
+        final List<IndexedFile> previousFiles = new ArrayList<>();
+        updateAllShards(() -> {
+            for (int i = 0; i < shards.length; i++) {
+                shards[i].replace(segments[i], previousFiles);
+            }
+            archiveEntries.clear();
+            archiveEntries.putAll(snapshot.getArchiveEntries());
+        });
+        previousFiles.forEach(contentRegistry::release);
+        Arrays.stream(shards).forEach(IndexShard::requestMaintenance);
+        log.info("Index snapshot with {} files imported from {}", snapshot.getFiles().size(), source);
     }
 
     public void clear() {
-        writeLock.lock();
+        archiveEntries.clear();
+        for (IndexShard shard : shards) {
+            shard.clear();
+        }
+        contentRegistry.clear();
+    }
+
+    /**
+     * Cancels indexing jobs, stops index threads and clears the index. Files being tokenized at the moment
+     * are not added to the closed index.
+     */
+    public void close() {
+        closed = true;
+        activeJobs.forEach(IndexingJob::cancel);
+        indexExecutorService.shutdownNow();
+        walkExecutorService.shutdownNow();
+        if (ioExecutor != null) {
+            ioExecutor.shutdownNow();
+        }
+        maintenanceExecutorService.shutdownNow();
+        for (IndexShard shard : shards) {
+            shard.close();
+        }
+        contentRegistry.clear();
+        log.info("Index is closed");
+    }
+
+    /**
+     * @param readAheadFiles number of files checked ahead on I/O threads in {@link ExecutionMode#IO_THREADS} mode
+     * @param indexedFiles   indexed files of the bulk loaded trees collected before the load
+     * @param batch          contents acquired by the worker, registered after all workers are done
+     * @return files grouped by shard number, files which are not changed or cannot be tokenized are omitted
+     */
+    private List<List<IndexedFile>> buildPartialIndex(List<Path> files, IndexingJob job, int readAheadFiles,
+                                                      Map<Path, IndexedFile> indexedFiles, ContentBatch batch) {
+        final List<List<IndexedFile>> shardFiles = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            shardFiles.add(new ArrayList<>());
+        }
+        final ReadAheadWindow readAheadWindow = ioExecutor != null
+                ? new ReadAheadWindow(files, job, readAheadFiles, indexedFiles) : null;
+        for (int i = 0; i < files.size(); i++) {
+            final Path filePath = files.get(i);
+            if (job.isCancelled()) {
+                break;
+            }
+            if (!filePolicy.acceptsName(filePath)) {
+                job.fileExcluded();
+                continue;
+            }
+            if (Archive.isArchive(filePath)) {
+                tokenizeArchive(filePath, job).forEach(entry -> {
+                    shardFiles.get(shardNumber(entry.getPath())).add(entry);
+                    job.fileTokenized();
+                });
+                continue;
+            }
+            final CheckedFile checkedFile = readAheadWindow != null
+                    ? readAheadWindow.take(i)
+                    : checkFile(filePath, job, false, indexedFiles);
+            final IndexedFile indexedFile = tokenizeCheckedFile(checkedFile, job, batch);
+            if (indexedFile != null) {
+                shardFiles.get(shardNumber(filePath)).add(indexedFile);
+                job.fileTokenized();
+            }
+        }
+        if (readAheadWindow != null) {
+            readAheadWindow.drop();
+        }
+        return shardFiles;
+    }
+
+    /**
+     * Files excluded by size or content are checked before they are fingerprinted, so they are never read completely.
+     * Indexed version of an excluded file is removed, as the file content is changed.
+     *
+     * @return file with stored tokens or null if the file content is not changed or the file cannot be tokenized,
+     * skipped, excluded and failed files are counted by the job
+     */
+    private IndexedFile tokenizeFile(Path filePath, IndexingJob job) {
+        return tokenizeCheckedFile(checkFile(filePath, job, false, null), job, null);
+    }
+
+    /**
+     * First half of {@link #tokenizeFile}, which reads the file. In {@link ExecutionMode#IO_THREADS} mode it runs
+     * on an I/O thread and files up to {@value #READ_AHEAD_LIMIT} bytes are read into memory while they fit into
+     * the read-ahead budget, so they are fingerprinted and tokenized without reading them again.
+     *
+     * @return file to be tokenized or null if it is skipped, excluded or failed and counted by the job
+     */
+    private CheckedFile checkFile(Path filePath, IndexingJob job, boolean readAhead, Map<Path, IndexedFile> indexedFiles) {
+        final int reservedKb = readAhead ? reserveReadAhead(filePath) : 0;
+        try {
+            final byte[] content = reservedKb > 0 ? Files.readAllBytes(filePath) : null;
+            final boolean accepted = content != null
+                    ? filePolicy.acceptsSize(content.length)
+                    && filePolicy.acceptsContent(content, Math.min(content.length, FilePolicy.SNIFF_SIZE))
+                    : filePolicy.acceptsFile(filePath);
+            if (!accepted) {
+                log.info("File {} is too large or binary, tokenization skipped", filePath);
+                if (indexedFile(filePath, indexedFiles) != null) {
+                    shardOf(filePath).remove(filePath);
+                }
+                job.fileExcluded();
+                readAheadBudget.release(reservedKb);
+                return null;
+            }
+            final ContentFingerprint fingerprint = !deduplication ? null
+                    : content != null ? ContentFingerprint.of(content) : ContentFingerprint.of(filePath);
+            final IndexedFile currentFile = indexedFile(filePath, indexedFiles);
+            if (fingerprint != null && currentFile != null && fingerprint.equals(currentFile.getFingerprint())) {
+                log.info("File {} content is not changed, reindexing skipped", filePath);
+                job.fileSkipped();
+                readAheadBudget.release(reservedKb);
+                return null;
+            }
+            return new CheckedFile(filePath, fingerprint, content, reservedKb);
+        } catch (Exception e) {
+            log.error("Something went wrong during reading, file {} was not indexed", filePath, e);
+            job.fileFailed();
+            readAheadBudget.release(reservedKb);
+            return null;
+        }
+    }
+
+    /**
+     * @param indexedFiles indexed files collected in advance or null if the file should be looked up in its shard
+     */
+    private IndexedFile indexedFile(Path filePath, Map<Path, IndexedFile> indexedFiles) {
+        return indexedFiles != null ? indexedFiles.get(filePath) : shardOf(filePath).get(filePath);
+    }
+
+    /**
+     * Takes read-ahead budget for the file without waiting for it.
+     *
+     * @return reserved kilobytes or 0 if the file should be read by the tokenizer
+     */
+    private int reserveReadAhead(Path filePath) {
+        try {
+            final long size = Files.size(filePath);
+            final int sizeKb = (int) (size / 1024) + 1;
+            return size <= READ_AHEAD_LIMIT && readAheadBudget.tryAcquire(sizeKb) ? sizeKb : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Second half of {@link #tokenizeFile}, always runs on the core-sized pool. Read-ahead budget of the file
+     * is returned.
+     *
+     * @param batch contents of the bulk load worker or null if contents are registered right away
+     * @return file with stored tokens or null if the file is not checked or cannot be tokenized
+     */
+    private IndexedFile tokenizeCheckedFile(CheckedFile checkedFile, IndexingJob job, ContentBatch batch) {
+        if (checkedFile == null) {
+            return null;
+        }
+        final Path filePath = checkedFile.getPath();
         try {
-            indexedFiles.clear();
+            final Supplier<Map<String, Integer>> tokenization = () -> count(sink -> {
+                if (checkedFile.getContent() != null) {
+                    tokenizer.tokenize(filePath, checkedFile.getContent(), sink);
+                } else {
+                    tokenizer.tokenize(filePath, sink);
+                }
+            });
+            final Map<String, Integer> storedTokens = batch != null
+                    ? batch.acquire(checkedFile.getFingerprint(), tokenization)
+                    : contentRegistry.acquire(checkedFile.getFingerprint(), tokenization);
+            return new IndexedFile(UUID.randomUUID(), filePath, storedTokens, checkedFile.getFingerprint());
+        } catch (Exception e) {
+            log.error("Something went wrong during tokenization, file {} was not indexed", filePath, e);
+            job.fileFailed();
+            return null;
         } finally {
-            writeLock.unlock();
+            dropCheckedFile(checkedFile);
+        }
+    }
+
+    /**
+     * Tokens pushed by the tokenizer are counted right into the map which is stored, so no other token map is built.
+     */
+    private static Map<String, Integer> count(Consumer<TokenSink> tokenization) {
+        final TokenCounter counter = new TokenCounter();
+        tokenization.accept(counter);
+        return counter.toMap();
+    }
+
+    /**
+     * Returns read-ahead budget of the file which is tokenized or will never be.
+     */
+    private void dropCheckedFile(CheckedFile checkedFile) {
+        if (checkedFile != null) {
+            readAheadBudget.release(checkedFile.getReservedKb());
+        }
+    }
+
+    /**
+     * Checks and reads ahead files of a bulk load worker on I/O threads, at most {@code size} files ahead of the file
+     * being tokenized. Files are checked by the worker itself if the I/O threads reject them.
+     */
+    private class ReadAheadWindow {
+        private final List<Path> files;
+        private final IndexingJob job;
+        private final int size;
+        private final Map<Path, IndexedFile> indexedFiles;
+        private final Map<Integer, CompletableFuture<CheckedFile>> checkedFiles = new HashMap<>();
+        private int next;
+
+        private ReadAheadWindow(List<Path> files, IndexingJob job, int size, Map<Path, IndexedFile> indexedFiles) {
+            this.files = files;
+            this.job = job;
+            this.size = Math.max(1, size);
+            this.indexedFiles = indexedFiles;
+        }
+
+        /**
+         * @return checked file with given index in the worker files or null if it is skipped, excluded or failed
+         */
+        private CheckedFile take(int index) {
+            fill(index);
+            final CompletableFuture<CheckedFile> checkedFile = checkedFiles.remove(index);
+            if (checkedFile == null) {
+                return checkFile(files.get(index), job, false, indexedFiles);
+            }
+            try {
+                return checkedFile.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                checkedFile.thenAccept(Index.this::dropCheckedFile);
+                return null;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        /**
+         * Returns budget of files checked ahead which are not taken.
+         */
+        private void drop() {
+            checkedFiles.values().forEach(checkedFile -> checkedFile.thenAccept(Index.this::dropCheckedFile));
+            checkedFiles.clear();
+        }
+
+        private void fill(int index) {
+            for (next = Math.max(next, index); next < files.size() && next <= index + size; next++) {
+                final Path filePath = files.get(next);
+                if (!filePolicy.acceptsName(filePath) || Archive.isArchive(filePath)) {
+                    continue;
+                }
+                try {
+                    checkedFiles.put(next, CompletableFuture.supplyAsync(
+                            () -> job.isCancelled() ? null : checkFile(filePath, job, true, indexedFiles), ioExecutor));
+                } catch (RejectedExecutionException e) {
+                    log.info("Index is closed, files are not read ahead");
+                    next = files.size();
+                }
+            }
         }
     }
 
+    /**
+     * Tokenizes archive entries changed since the archive was indexed last time, entries are tokenized in parallel.
+     * Entries removed from the archive are removed from the index right away. Entry contents are not shared
+     * with other files.
+     *
+     * @return tokenized entries, the archive itself and its unchanged, excluded and failed entries are counted by the job
+     */
+    private List<IndexedFile> tokenizeArchive(Path archivePath, IndexingJob job) {
+        try (final Archive archive = Archive.open(archivePath)) {
+            final Map<Path, ContentFingerprint> entries = new LinkedHashMap<>(archive.getEntries());
+            entries.keySet().removeIf(entryPath -> ignoreRules.isIgnoredBelow(Archive.rootOf(archivePath), entryPath));
+            entries.entrySet().removeIf(entry -> {
+                if (filePolicy.acceptsName(entry.getKey()) && filePolicy.acceptsSize(entry.getValue().getSize())) {
+                    return false;
+                }
+                job.fileDiscovered();
+                job.fileExcluded();
+                return true;
+            });
+            final Map<Path, ContentFingerprint> indexedEntries = archiveEntries.getOrDefault(archivePath, Map.of());
+            indexedEntries.keySet().stream()
+                    .filter(entryPath -> !entries.containsKey(entryPath))
+                    .forEach(entryPath -> shardOf(entryPath).remove(entryPath));
+
+            final List<Path> changedEntries = new ArrayList<>();
+            entries.forEach((entryPath, checksum) -> {
+                job.fileDiscovered();
+                if (checksum.equals(indexedEntries.get(entryPath))) {
+                    job.fileSkipped();
+                } else {
+                    changedEntries.add(entryPath);
+                }
+            });
+            final List<IndexedFile> tokenizedEntries = changedEntries.parallelStream()
+                    .map(entryPath -> tokenizeArchiveEntry(archive, entryPath, job))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+            final Map<Path, ContentFingerprint> processedEntries = new HashMap<>(entries);
+            processedEntries.keySet().removeAll(changedEntries);
+            tokenizedEntries.forEach(entry -> processedEntries.put(entry.getPath(), entries.get(entry.getPath())));
+            archiveEntries.put(archivePath, processedEntries);
+            log.info("Archive {} is tokenized, {} of {} entries are changed", archivePath, changedEntries.size(), entries.size());
+            job.fileTokenized();
+            return tokenizedEntries;
+        } catch (IOException | RuntimeException e) {
+            log.error("Something went wrong during reading archive {}, it was not indexed", archivePath, e);
+            job.fileFailed();
+            return List.of();
+        }
+    }
+
+    /**
+     * @return entry with stored tokens or null if the entry cannot be tokenized or the job is cancelled
+     */
+    private IndexedFile tokenizeArchiveEntry(Archive archive, Path entryPath, IndexingJob job) {
+        if (job.isCancelled()) {
+            return null;
+        }
+        try (final BufferedInputStream content = new BufferedInputStream(archive.openEntry(entryPath), FilePolicy.SNIFF_SIZE)) {
+            content.mark(FilePolicy.SNIFF_SIZE);
+            final byte[] head = content.readNBytes(FilePolicy.SNIFF_SIZE);
+            content.reset();
+            if (!filePolicy.acceptsContent(head, head.length)) {
+                log.info("Archive entry {} is binary, tokenization skipped", entryPath);
+                shardOf(entryPath).remove(entryPath);
+                job.fileExcluded();
+                return null;
+            }
+            final Map<String, Integer> storedTokens = contentRegistry.acquire(null, () -> count(sink -> tokenizer.tokenize(content, sink)));
+            return new IndexedFile(UUID.randomUUID(), entryPath, storedTokens, null);
+        } catch (Exception e) {
+            log.error("Something went wrong during tokenization, archive entry {} was not indexed", entryPath, e);
+            job.fileFailed();
+            return null;
+        }
+    }
+
+    private IndexingJob startJob() {
+        final IndexingJob job = new IndexingJob();
+        if (closed) {
+            job.cancel();
+            return job;
+        }
+        activeJobs.add(job);
+        job.getCompletion().whenComplete((result, throwable) -> activeJobs.remove(job));
+        return job;
+    }
+
+    private void submitFile(Path filePath, IndexingJob job) {
+        if (job.isCancelled()) {
+            return;
+        }
+        job.fileDiscovered();
+        if (ioExecutor != null && filePolicy.acceptsName(filePath) && !Archive.isArchive(filePath)) {
+            ioExecutor.execute(() -> {
+                final CheckedFile checkedFile = job.isCancelled() ? null : checkFile(filePath, job, true, null);
+                if (checkedFile == null) {
+                    return;
+                }
+                try {
+                    indexExecutorService.execute(() -> {
+                        if (job.isCancelled()) {
+                            dropCheckedFile(checkedFile);
+                        } else {
+                            putFile(tokenizeCheckedFile(checkedFile, job, null), job);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.info("Index is closed, file {} is not tokenized", filePath);
+                    dropCheckedFile(checkedFile);
+                }
+            });
+            return;
+        }
+        indexExecutorService.execute(() -> {
+            if (!job.isCancelled()) {
+                addFile(filePath, job);
+            }
+        });
+    }
+
+    private IndexShard shardOf(Path filePath) {
+        return shards[shardNumber(filePath)];
+    }
+
+    int shardNumber(Path filePath) {
+        return Math.floorMod(filePath.hashCode(), shards.length);
+    }
+
+    @Value
+    private static class CheckedFile {
+        Path path;
+        ContentFingerprint fingerprint;
+        /**
+         * Content read ahead by an I/O thread or null if the tokenizer should read the file.
+         */
+        byte[] content;
+        int reservedKb;
+    }
 }
@@ -0,0 +1,116 @@
+package org.java.indexer.core.index;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Set;
+
+/**
+ * Tuning options of the index. Every option has a default value, so only changed options should be set.
+ * <pre>
+ * IndexSettings settings = IndexSettings.builder()
+ *         .executionMode(ExecutionMode.IO_THREADS)
+ *         .build();
+ * </pre>
+ */
+@Value
+@Builder
+public class IndexSettings {
+
+    public static final IndexSettings DEFAULT = IndexSettings.builder().build();
+
+    /**
+     * Whether files are fingerprinted by content hash before tokenization. Files with equal content share
+     * a single tokenized representation and reindexing of a file with unchanged content is skipped.
+     */
+    @Builder.Default
+    boolean deduplication = true;
+
+    /**
+     * Whether distinct tokens are indexed by trigrams to speed up substring queries. Without the trigram index
+     * substring queries scan all the distinct tokens.
+     */
+    @Builder.Default
+    boolean substringIndex = false;
+
+    /**
+     * Files larger than this size in bytes are not tokenized.
+     */
+    @Builder.Default
+    long maxFileSize = 1024L * 1024 * 1024;
+
+    /**
+     * Whether first bytes of every file are checked before tokenization, so binary files are not tokenized.
+     */
+    @Builder.Default
+    boolean binaryDetection = true;
+
+    /**
+     * Extensions of files to be tokenized, e.g. {@code java} or {@code txt}, case insensitive.
+     * Empty set allows all extensions, files without extension are matched by empty string.
+     */
+    @Builder.Default
+    Set<String> allowedExtensions = Set.of();
+
+    /**
+     * Extensions of files not to be tokenized, e.g. {@code png} or {@code class}, case insensitive.
+     */
+    @Builder.Default
+    Set<String> deniedExtensions = Set.of();
+
+    /**
+     * Number of independently locked index parts. Files are distributed between shards by path hash,
+     * queries are executed over all shards in parallel.
+     */
+    @Builder.Default
+    int shards = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of files in the mutable buffer of a shard that triggers its flush into an immutable segment.
+     */
+    @Builder.Default
+    int flushThreshold = 1000;
+
+    /**
+     * Interval between periodic flushes of not empty shard buffers.
+     */
+    @Builder.Default
+    long flushIntervalMillis = 1000;
+
+    /**
+     * Number of immutable segments of a shard above which the smallest segments are merged.
+     */
+    @Builder.Default
+    int maxSegments = 8;
+
+    /**
+     * Number of segments merged at once when a shard has too many segments.
+     */
+    @Builder.Default
+    int mergeFactor = 4;
+
+    /**
+     * Ratio of deleted files starting from which a segment is rewritten to purge them.
+     */
+    @Builder.Default
+    double purgeDeletedRatio = 0.3;
+
+    /**
+     * Number of background threads flushing and merging segments of all shards.
+     */
+    @Builder.Default
+    int mergeThreads = 1;
+
+    /**
+     * Which threads read files during indexing.
+     */
+    @Builder.Default
+    ExecutionMode executionMode = ExecutionMode.CORE_POOL;
+
+    /**
+     * Maximum number of files read at once in {@link ExecutionMode#IO_THREADS} mode, also the size of the I/O pool
+     * when virtual threads are not supported.
+     */
+    @Builder.Default
+    int ioThreads = 256;
+}
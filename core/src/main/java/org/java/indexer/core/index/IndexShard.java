@@ -0,0 +1,496 @@
+package org.java.indexer.core.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Part of the index holding files routed to it by {@link Index}. Every shard has its own lock,
+ * so writes to different shards and queries over different shards do not wait for each other.
+ * <p>Shard is organized as a log-structured merge tree. Writes go to a small mutable buffer, which is periodically
+ * frozen and turned into an immutable {@link Segment} in background. Segments are merged in background as well,
+ * deleted files are purged during merges. Every file path is present in at most one place: replaced or removed
+ * files are deleted from the buffer or marked with tombstones in the frozen buffer and segments.
+ * <p>Queries scan the buffer holding the read lock and look up segment postings without any lock.
+ */
+@Slf4j
+class IndexShard {
+
+    private final ContentRegistry contentRegistry;
+    private final IndexSettings settings;
+    private final Executor maintenanceExecutor;
+    private final AtomicBoolean maintenanceScheduled = new AtomicBoolean(false);
+    private final Lock writeLock;
+    private final Lock readLock;
+
+    private Map<Path, IndexedFile> buffer = new HashMap<>();
+    private Map<Path, IndexedFile> frozenBuffer = Collections.emptyMap();
+    private Set<Path> frozenBufferTombstones = new HashSet<>();
+    private volatile List<Segment> segments = List.of();
+    private long generation;
+    private boolean closed;
+
+    IndexShard(ContentRegistry contentRegistry, IndexSettings settings, Executor maintenanceExecutor) {
+        this.contentRegistry = contentRegistry;
+        this.settings = settings;
+        this.maintenanceExecutor = maintenanceExecutor;
+        final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+        writeLock = readWriteLock.writeLock();
+        readLock = readWriteLock.readLock();
+    }
+
+    Lock getReadLock() {
+        return readLock;
+    }
+
+    Lock getWriteLock() {
+        return writeLock;
+    }
+
+    /**
+     * Adds current shard files to the collection, consistent view requires holding the shard read lock.
+     */
+    void collectFiles(Collection<IndexedFile> files) {
+        files.addAll(buffer.values());
+        frozenBuffer.forEach((path, indexedFile) -> {
+            if (!frozenBufferTombstones.contains(path)) {
+                files.add(indexedFile);
+            }
+        });
+        segments.forEach(segment -> segment.collectLiveFiles(segment.getDeletedDocuments(), files));
+    }
+
+    /**
+     * Adds current files of the folder to the collection, the folder itself might be a file path.
+     */
+    void collectFilesInFolder(Path folderPath, Collection<IndexedFile> files) {
+        readLock.lock();
+        try {
+            buffer.forEach((path, indexedFile) -> {
+                if (path.startsWith(folderPath)) {
+                    files.add(indexedFile);
+                }
+            });
+            frozenBuffer.forEach((path, indexedFile) -> {
+                if (path.startsWith(folderPath) && !frozenBufferTombstones.contains(path)) {
+                    files.add(indexedFile);
+                }
+            });
+            for (Segment segment : segments) {
+                segment.findInFolder(folderPath).stream().forEach(documentId -> files.add(segment.file(documentId)));
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    IndexedFile get(Path filePath) {
+        readLock.lock();
+        try {
+            final IndexedFile indexedFile = buffer.get(filePath);
+            if (indexedFile != null) {
+                return indexedFile;
+            }
+            if (!frozenBufferTombstones.contains(filePath) && frozenBuffer.containsKey(filePath)) {
+                return frozenBuffer.get(filePath);
+            }
+            for (Segment segment : segments) {
+                final int documentId = segment.find(filePath);
+                if (documentId >= 0) {
+                    return segment.file(documentId);
+                }
+            }
+            return null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    void put(IndexedFile newFile) {
+        final boolean bufferIsFull;
+        writeLock.lock();
+        try {
+            if (closed) {
+                contentRegistry.release(newFile);
+                return;
+            }
+            delete(newFile.getPath());
+            buffer.put(newFile.getPath(), newFile);
+            bufferIsFull = buffer.size() >= settings.getFlushThreshold();
+        } finally {
+            writeLock.unlock();
+        }
+        if (bufferIsFull) {
+            requestMaintenance();
+        }
+    }
+
+    void remove(Path filePath) {
+        writeLock.lock();
+        try {
+            delete(filePath);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void removeFolder(Path folderPath) {
+        writeLock.lock();
+        try {
+            buffer.entrySet().removeIf(pathIndexedFileEntry -> {
+                if (pathIndexedFileEntry.getKey().startsWith(folderPath.toString())) {
+                    contentRegistry.release(pathIndexedFileEntry.getValue());
+                    return true;
+                }
+                return false;
+            });
+            frozenBuffer.forEach((path, indexedFile) -> {
+                if (path.startsWith(folderPath.toString()) && frozenBufferTombstones.add(path)) {
+                    contentRegistry.release(indexedFile);
+                }
+            });
+            for (Segment segment : segments) {
+                final BitSet documents = segment.findInFolder(folderPath);
+                if (!documents.isEmpty()) {
+                    documents.stream().forEach(documentId -> contentRegistry.release(segment.file(documentId)));
+                    segment.delete(documents);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Appends segment built outside the shard, previous versions of its files are deleted.
+     * Should be called holding the write lock.
+     */
+    void publish(Segment segment) {
+        if (closed) {
+            for (int documentId = 0; documentId < segment.size(); documentId++) {
+                contentRegistry.release(segment.file(documentId));
+            }
+            return;
+        }
+        if (segment.size() == 0) {
+            return;
+        }
+        for (int documentId = 0; documentId < segment.size(); documentId++) {
+            delete(segment.file(documentId).getPath());
+        }
+        segments = append(segments, segment);
+    }
+
+    /**
+     * Replaces all files of the shard with the segment built outside the shard. Previous files are added to the
+     * collection and are not released. Should be called holding the write lock.
+     */
+    void replace(Segment segment, Collection<IndexedFile> previousFiles) {
+        collectFiles(previousFiles);
+        buffer = new HashMap<>();
+        frozenBuffer = Collections.emptyMap();
+        frozenBufferTombstones = new HashSet<>();
+        segments = List.of();
+        generation++;
+        publish(segment);
+    }
+
+    Map<String, Integer> query(String token) {
+        return query(List.of(token), BooleanOperator.OR, QueryDeadline.after(null));
+    }
+
+    /**
+     * Stops scanning files once the deadline is reached, shard locked by a writer past the deadline is skipped.
+     *
+     * @return summed occurrences of the tokens by path of files matching the operator
+     * @throws RuntimeException if shard is being updated for too long
+     */
+    Map<String, Integer> query(List<String> tokens, BooleanOperator operator, QueryDeadline deadline) {
+        final Map<String, Integer> occurrences = new HashMap<>();
+        final List<Segment> segmentsView;
+        final List<BitSet> deletedDocumentsView = new ArrayList<>();
+        try {
+            if (!readLock.tryLock(Math.min(TimeUnit.SECONDS.toNanos(5), deadline.remainingNanos()), TimeUnit.NANOSECONDS)) {
+                if (deadline.isExpired()) {
+                    deadline.skip();
+                    return occurrences;
+                }
+                throw new RuntimeException("Index is being updated, try later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        try {
+            int scanned = 0;
+            for (IndexedFile indexedFile : buffer.values()) {
+                if (deadline.isExpired(scanned++)) {
+                    deadline.skip();
+                    return occurrences;
+                }
+                collectOccurrences(indexedFile, tokens, operator, occurrences);
+            }
+            for (Map.Entry<Path, IndexedFile> entry : frozenBuffer.entrySet()) {
+                if (deadline.isExpired(scanned++)) {
+                    deadline.skip();
+                    return occurrences;
+                }
+                if (!frozenBufferTombstones.contains(entry.getKey())) {
+                    collectOccurrences(entry.getValue(), tokens, operator, occurrences);
+                }
+            }
+            segmentsView = segments;
+            segmentsView.forEach(segment -> deletedDocumentsView.add(segment.getDeletedDocuments()));
+        } finally {
+            readLock.unlock();
+        }
+        for (int i = 0; i < segmentsView.size(); i++) {
+            if (deadline.isExpired()) {
+                deadline.skip();
+                break;
+            }
+            segmentsView.get(i).query(tokens, operator, deletedDocumentsView.get(i), occurrences, deadline);
+        }
+        return occurrences;
+    }
+
+    void clear() {
+        writeLock.lock();
+        try {
+            buffer = new HashMap<>();
+            frozenBuffer = Collections.emptyMap();
+            frozenBufferTombstones = new HashSet<>();
+            segments = List.of();
+            generation++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Clears the shard, files put after that are released immediately.
+     */
+    void close() {
+        writeLock.lock();
+        try {
+            closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+        clear();
+    }
+
+    /**
+     * Schedules flush of the buffer and segment merges unless they are already scheduled.
+     */
+    void requestMaintenance() {
+        if (maintenanceScheduled.compareAndSet(false, true)) {
+            try {
+                maintenanceExecutor.execute(this::maintain);
+            } catch (RejectedExecutionException e) {
+                log.debug("Shard maintenance is not scheduled, index is closed");
+                maintenanceScheduled.set(false);
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            flush();
+            while (merge()) {
+                log.debug("Shard segments are merged, {} segments left", segments.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Shard maintenance failed", e);
+        } finally {
+            maintenanceScheduled.set(false);
+        }
+    }
+
+    /**
+     * Freezes the buffer and builds a segment of it. If the segment cannot be built, frozen files are returned
+     * to the buffer.
+     */
+    private void flush() {
+        final Map<Path, IndexedFile> frozen;
+        final long frozenGeneration;
+        final Segment segment;
+        writeLock.lock();
+        try {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            frozen = buffer;
+            frozenGeneration = generation;
+            frozenBuffer = frozen;
+            buffer = new HashMap<>();
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            segment = Segment.build(frozen.values());
+        } catch (RuntimeException e) {
+            unfreeze(frozen, frozenGeneration);
+            throw e;
+        }
+
+        writeLock.lock();
+        try {
+            if (frozenGeneration == generation) {
+                final BitSet tombstones = new BitSet();
+                frozenBufferTombstones.forEach(path -> tombstones.set(segment.find(path)));
+                segment.delete(tombstones);
+                segments = append(segments, segment);
+            }
+            frozenBuffer = Collections.emptyMap();
+            frozenBufferTombstones = new HashSet<>();
+        } finally {
+            writeLock.unlock();
+        }
+        log.debug("Shard buffer of {} files is flushed to segment", segment.size());
+    }
+
+    /**
+     * Returns frozen files which are not deleted meanwhile to the buffer, newer versions of them are already there.
+     */
+    private void unfreeze(Map<Path, IndexedFile> frozen, long frozenGeneration) {
+        writeLock.lock();
+        try {
+            if (frozenGeneration == generation) {
+                frozen.forEach((path, indexedFile) -> {
+                    if (!frozenBufferTombstones.contains(path)) {
+                        buffer.putIfAbsent(path, indexedFile);
+                    }
+                });
+            }
+            frozenBuffer = Collections.emptyMap();
+            frozenBufferTombstones = new HashSet<>();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Merges smallest segments if there are too many of them or purges a segment with too many deleted files.
+     *
+     * @return whether any segments were merged
+     */
+    private boolean merge() {
+        final List<Segment> currentSegments = segments;
+        final List<Segment> mergedSegments = selectSegmentsToMerge(currentSegments);
+        if (mergedSegments.isEmpty()) {
+            return false;
+        }
+        final List<BitSet> mergedDeletedDocuments = mergedSegments.stream()
+                .map(Segment::getDeletedDocuments)
+                .collect(Collectors.toList());
+        final Segment merged = Segment.merge(mergedSegments, mergedDeletedDocuments);
+
+        writeLock.lock();
+        try {
+            if (segments != currentSegments) {
+                return false;
+            }
+            final BitSet deletedDuringMerge = new BitSet();
+            for (int i = 0; i < mergedSegments.size(); i++) {
+                final Segment segment = mergedSegments.get(i);
+                final BitSet newlyDeleted = (BitSet) segment.getDeletedDocuments().clone();
+                newlyDeleted.andNot(mergedDeletedDocuments.get(i));
+                newlyDeleted.stream().forEach(documentId -> deletedDuringMerge.set(merged.find(segment.file(documentId).getPath())));
+            }
+            merged.delete(deletedDuringMerge);
+            final List<Segment> newSegments = new ArrayList<>(currentSegments);
+            newSegments.removeAll(mergedSegments);
+            if (merged.liveSize(merged.getDeletedDocuments()) > 0) {
+                newSegments.add(merged);
+            }
+            segments = List.copyOf(newSegments);
+        } finally {
+            writeLock.unlock();
+        }
+        return true;
+    }
+
+    private List<Segment> selectSegmentsToMerge(List<Segment> currentSegments) {
+        if (currentSegments.size() > settings.getMaxSegments()) {
+            return currentSegments.stream()
+                    .sorted(Comparator.comparingInt(segment -> segment.liveSize(segment.getDeletedDocuments())))
+                    .limit(Math.max(2, settings.getMergeFactor()))
+                    .collect(Collectors.toList());
+        }
+        return currentSegments.stream()
+                .filter(segment -> {
+                    final int deleted = segment.size() - segment.liveSize(segment.getDeletedDocuments());
+                    return deleted > 0 && deleted >= segment.size() * settings.getPurgeDeletedRatio();
+                })
+                .findFirst()
+                .map(List::of)
+                .orElse(List.of());
+    }
+
+    /**
+     * Deletes file with given path wherever it is placed and releases its content.
+     * Should be called holding the write lock.
+     */
+    private void delete(Path filePath) {
+        final IndexedFile bufferedFile = buffer.remove(filePath);
+        if (bufferedFile != null) {
+            contentRegistry.release(bufferedFile);
+            return;
+        }
+        final IndexedFile frozenFile = frozenBuffer.get(filePath);
+        if (frozenFile != null) {
+            if (frozenBufferTombstones.add(filePath)) {
+                contentRegistry.release(frozenFile);
+            }
+            return;
+        }
+        for (Segment segment : segments) {
+            final int documentId = segment.find(filePath);
+            if (documentId >= 0) {
+                contentRegistry.release(segment.file(documentId));
+                segment.delete(documentId);
+                return;
+            }
+        }
+    }
+
+    private static void collectOccurrences(IndexedFile indexedFile, List<String> tokens, BooleanOperator operator,
+                                           Map<String, Integer> occurrences) {
+        int count = 0;
+        for (String token : tokens) {
+            final int tokenCount = indexedFile.query(token);
+            if (tokenCount == 0 && operator == BooleanOperator.AND) {
+                return;
+            }
+            count += tokenCount;
+        }
+        if (count != 0) {
+            occurrences.put(indexedFile.getPath().toString(), count);
+        }
+    }
+
+    private static List<Segment> append(List<Segment> segments, Segment segment) {
+        final List<Segment> newSegments = new ArrayList<>(segments);
+        newSegments.add(segment);
+        return List.copyOf(newSegments);
+    }
+}
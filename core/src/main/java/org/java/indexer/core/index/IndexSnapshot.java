@@ -0,0 +1,357 @@
+package org.java.indexer.core.index;
+
+import lombok.Value;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Binary snapshot of index state.
+ * <p>Format (version 2), all integers are unsigned varints unless stated otherwise:
+ * <pre>
+ * magic "JINX" (4 bytes), version
+ * files count, for every file:
+ *     path length, path UTF-8 bytes, content id, fingerprint flag (1 byte)
+ *     [content size, content hash (8 bytes)] if flag is set
+ * archives count, for every archive:
+ *     path length, path UTF-8 bytes, entries count, for every entry:
+ *         path length, path UTF-8 bytes, checksum size, checksum hash (8 bytes)
+ * contents count, terms count, for every term in UTF-8 bytes order:
+ *     shared prefix length with previous term, suffix length, suffix UTF-8 bytes
+ *     postings count, for every posting: content id delta, token quantity
+ * </pre>
+ * Files with equal content refer to the same content id, so shared contents are written once.
+ * Version 1 snapshots have no archives section and are still read.
+ */
+@Value
+class IndexSnapshot {
+
+    private static final byte[] MAGIC = "JINX".getBytes(UTF_8);
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Files with token maps not placed into any {@link TokenStorage}.
+     */
+    List<IndexedFile> files;
+    /**
+     * Checksums of processed entries by archive path, used to detect changed entries when an archive is indexed again.
+     */
+    Map<Path, Map<Path, ContentFingerprint>> archiveEntries;
+
+    /**
+     * Writes the snapshot to a temporary sibling file which atomically replaces the target,
+     * so a failed write keeps the previous snapshot.
+     */
+    static void write(Path target, Collection<IndexedFile> files, Map<Path, Map<Path, ContentFingerprint>> archiveEntries)
+            throws IOException {
+        final Map<Map<String, Integer>, Integer> contentIds = new IdentityHashMap<>();
+        final List<Map<String, Integer>> contents = new ArrayList<>();
+        for (IndexedFile file : files) {
+            contentIds.computeIfAbsent(file.getCountedTokens(), tokens -> {
+                contents.add(tokens);
+                return contents.size() - 1;
+            });
+        }
+
+        final Map<String, Postings> postingsByTerm = new HashMap<>();
+        for (int contentId = 0; contentId < contents.size(); contentId++) {
+            final int id = contentId;
+            contents.get(contentId).forEach((token, count) ->
+                    postingsByTerm.computeIfAbsent(token, key -> new Postings()).add(id, count));
+        }
+        final List<Map.Entry<byte[], Postings>> terms = new ArrayList<>(postingsByTerm.size());
+        postingsByTerm.forEach((term, postings) -> terms.add(Map.entry(term.getBytes(UTF_8), postings)));
+        terms.sort((e1, e2) -> Arrays.compareUnsigned(e1.getKey(), e2.getKey()));
+
+        final Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName() + ".", ".tmp");
+        try {
+            try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                final Writer writer = new Writer(channel);
+                writer.writeBytes(MAGIC);
+                writer.writeVarLong(VERSION);
+
+                writer.writeVarLong(files.size());
+                for (IndexedFile file : files) {
+                    writer.writeByteArray(file.getPath().toString().getBytes(UTF_8));
+                    writer.writeVarLong(contentIds.get(file.getCountedTokens()));
+                    final ContentFingerprint fingerprint = file.getFingerprint();
+                    writer.writeByte(fingerprint == null ? 0 : 1);
+                    if (fingerprint != null) {
+                        writer.writeVarLong(fingerprint.getSize());
+                        writer.writeLong(fingerprint.getHash());
+                    }
+                }
+
+                writer.writeVarLong(archiveEntries.size());
+                for (Map.Entry<Path, Map<Path, ContentFingerprint>> archive : archiveEntries.entrySet()) {
+                    writer.writeByteArray(archive.getKey().toString().getBytes(UTF_8));
+                    writer.writeVarLong(archive.getValue().size());
+                    for (Map.Entry<Path, ContentFingerprint> entry : archive.getValue().entrySet()) {
+                        writer.writeByteArray(entry.getKey().toString().getBytes(UTF_8));
+                        writer.writeVarLong(entry.getValue().getSize());
+                        writer.writeLong(entry.getValue().getHash());
+                    }
+                }
+
+                writer.writeVarLong(contents.size());
+                writer.writeVarLong(terms.size());
+                byte[] previousTerm = new byte[0];
+                for (Map.Entry<byte[], Postings> termPostings : terms) {
+                    final byte[] term = termPostings.getKey();
+                    final Postings postings = termPostings.getValue();
+                    final int prefix = Math.max(0, Arrays.mismatch(previousTerm, term));
+                    writer.writeVarLong(prefix);
+                    writer.writeByteArray(Arrays.copyOfRange(term, prefix, term.length));
+                    writer.writeVarLong(postings.size);
+                    int previousContentId = 0;
+                    for (int i = 0; i < postings.size; i++) {
+                        writer.writeVarLong(postings.contentIds[i] - previousContentId);
+                        writer.writeVarLong(postings.counts[i]);
+                        previousContentId = postings.contentIds[i];
+                    }
+                    previousTerm = term;
+                }
+                writer.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    static IndexSnapshot read(Path source) throws IOException {
+        try (final FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            final Reader reader = new Reader(channel);
+            if (!Arrays.equals(MAGIC, reader.readBytes(MAGIC.length))) {
+                throw new IOException("File " + source + " is not an index snapshot");
+            }
+            final long version = reader.readVarLong();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Snapshot version " + version + " is not supported");
+            }
+
+            final int filesCount = reader.readVarInt();
+            final String[] paths = new String[filesCount];
+            final int[] fileContentIds = new int[filesCount];
+            final ContentFingerprint[] fingerprints = new ContentFingerprint[filesCount];
+            for (int i = 0; i < filesCount; i++) {
+                paths[i] = new String(reader.readByteArray(), UTF_8);
+                fileContentIds[i] = reader.readVarInt();
+                if (reader.readByte() != 0) {
+                    fingerprints[i] = new ContentFingerprint(reader.readVarLong(), reader.readLong());
+                }
+            }
+
+            final Map<Path, Map<Path, ContentFingerprint>> archiveEntries = new HashMap<>();
+            final int archivesCount = version > 1 ? reader.readVarInt() : 0;
+            for (int i = 0; i < archivesCount; i++) {
+                final Path archivePath = Paths.get(new String(reader.readByteArray(), UTF_8));
+                final int entriesCount = reader.readVarInt();
+                final Map<Path, ContentFingerprint> entries = new HashMap<>(entriesCount * 2);
+                for (int j = 0; j < entriesCount; j++) {
+                    entries.put(Paths.get(new String(reader.readByteArray(), UTF_8)),
+                            new ContentFingerprint(reader.readVarLong(), reader.readLong()));
+                }
+                archiveEntries.put(archivePath, entries);
+            }
+
+            final int contentsCount = reader.readVarInt();
+            for (int contentId : fileContentIds) {
+                checkContentId(contentId, contentsCount);
+            }
+            final List<Map<String, Integer>> contents = new ArrayList<>(contentsCount);
+            for (int i = 0; i < contentsCount; i++) {
+                contents.add(new HashMap<>());
+            }
+            final int termsCount = reader.readVarInt();
+            byte[] previousTerm = new byte[0];
+            for (int i = 0; i < termsCount; i++) {
+                final int prefix = reader.readVarInt();
+                if (prefix > previousTerm.length) {
+                    throw new IOException("Corrupt snapshot, term shares " + prefix + " bytes with shorter previous term");
+                }
+                final byte[] suffix = reader.readByteArray();
+                final byte[] term = Arrays.copyOf(previousTerm, prefix + suffix.length);
+                System.arraycopy(suffix, 0, term, prefix, suffix.length);
+                final String token = new String(term, UTF_8);
+                final int postingsCount = reader.readVarInt();
+                int contentId = 0;
+                for (int j = 0; j < postingsCount; j++) {
+                    contentId += reader.readVarInt();
+                    checkContentId(contentId, contentsCount);
+                    contents.get(contentId).put(token, reader.readVarInt());
+                }
+                previousTerm = term;
+            }
+
+            final List<IndexedFile> files = new ArrayList<>(filesCount);
+            for (int i = 0; i < filesCount; i++) {
+                files.add(new IndexedFile(UUID.randomUUID(), Paths.get(paths[i]), contents.get(fileContentIds[i]), fingerprints[i]));
+            }
+            return new IndexSnapshot(files, archiveEntries);
+        }
+    }
+
+    private static void checkContentId(int contentId, int contentsCount) throws IOException {
+        if (contentId < 0 || contentId >= contentsCount) {
+            throw new IOException("Corrupt snapshot, content id " + contentId + " is out of " + contentsCount + " contents");
+        }
+    }
+
+    private static class Postings {
+        private int[] contentIds = new int[4];
+        private int[] counts = new int[4];
+        private int size;
+
+        private void add(int contentId, int count) {
+            if (size == contentIds.length) {
+                contentIds = Arrays.copyOf(contentIds, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            contentIds[size] = contentId;
+            counts[size] = count;
+            size++;
+        }
+    }
+
+    private static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void writeByte(int value) throws IOException {
+            ensureRemaining(1);
+            buffer.put((byte) value);
+        }
+
+        private void writeLong(long value) throws IOException {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            ensureRemaining(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void writeByteArray(byte[] bytes) throws IOException {
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensureRemaining(1);
+                final int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static class Reader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private Reader(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        private byte readByte() throws IOException {
+            ensureRemaining(1);
+            return buffer.get();
+        }
+
+        private long readLong() throws IOException {
+            ensureRemaining(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                final byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in snapshot");
+        }
+
+        private int readVarInt() throws IOException {
+            return Math.toIntExact(readVarLong());
+        }
+
+        private byte[] readByteArray() throws IOException {
+            return readBytes(readVarInt());
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            final byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                ensureRemaining(1);
+                final int chunk = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, chunk);
+                offset += chunk;
+            }
+            return bytes;
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Snapshot is truncated");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
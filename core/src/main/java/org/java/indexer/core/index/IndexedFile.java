@@ -1,5 +1,6 @@
 package org.java.indexer.core.index;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.nio.file.Path;
@@ -9,12 +10,18 @@ import java.util.UUID;
 public class IndexedFile {
     @Getter private final UUID id;
     @Getter private final Path path;
-    private final Map<String, Integer> countedTokens;
+    @Getter(AccessLevel.PACKAGE) private final Map<String, Integer> countedTokens;
+    @Getter(AccessLevel.PACKAGE) private final ContentFingerprint fingerprint;
 
     public IndexedFile(UUID id, Path path, Map<String, Integer> countedTokens) {
+        this(id, path, countedTokens, null);
+    }
+
+    IndexedFile(UUID id, Path path, Map<String, Integer> countedTokens, ContentFingerprint fingerprint) {
         this.id = id;
         this.path = path;
         this.countedTokens = countedTokens;
+        this.fingerprint = fingerprint;
     }
 
     public int query(String token) {
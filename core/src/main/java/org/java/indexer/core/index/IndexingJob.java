@@ -0,0 +1,103 @@
+package org.java.indexer.core.index;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handle of files and folders indexing. Job is completed when every discovered file is tokenized, skipped as not
+ * changed, excluded by the file policy or failed. Cancelled job completes immediately, its files which are not yet tokenized are not indexed.
+ * <p>Counters might be read while the job is in progress to report its progress.
+ */
+public class IndexingJob {
+
+    private final CompletableFuture<IndexingJob> completion = new CompletableFuture<>();
+    private final AtomicLong discovered = new AtomicLong();
+    private final AtomicLong tokenized = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong excluded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    /**
+     * Files in progress plus one held by the job owner until all files are submitted and published.
+     */
+    private final AtomicLong pending = new AtomicLong(1);
+
+    /**
+     * @return future completed with this job when all files are processed, cancelling it cancels the job
+     */
+    public CompletableFuture<IndexingJob> getCompletion() {
+        return completion;
+    }
+
+    public long getDiscovered() {
+        return discovered.get();
+    }
+
+    public long getTokenized() {
+        return tokenized.get();
+    }
+
+    /**
+     * @return number of files not tokenized again as their content is not changed
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return number of files not tokenized as they are binary, too large or have filtered extensions
+     */
+    public long getExcluded() {
+        return excluded.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    public boolean isCancelled() {
+        return completion.isCancelled();
+    }
+
+    public void cancel() {
+        completion.cancel(false);
+    }
+
+    void fileDiscovered() {
+        discovered.incrementAndGet();
+        pending.incrementAndGet();
+    }
+
+    void submissionFinished() {
+        finishFile();
+    }
+
+    void fileTokenized() {
+        tokenized.incrementAndGet();
+        finishFile();
+    }
+
+    void fileSkipped() {
+        skipped.incrementAndGet();
+        finishFile();
+    }
+
+    void fileExcluded() {
+        excluded.incrementAndGet();
+        finishFile();
+    }
+
+    void fileFailed() {
+        failed.incrementAndGet();
+        finishFile();
+    }
+
+    private void finishFile() {
+        if (pending.decrementAndGet() == 0) {
+            completion.complete(this);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.java.indexer.core.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking file reads on a virtual thread per task when the JVM supports them, otherwise on a pool
+ * of {@code maxReads} daemon threads. Virtual threads are created reflectively, as the index is built for Java 11.
+ * At most {@code maxReads} tasks run at once in both cases, so open files are bounded.
+ */
+@Slf4j
+class IoExecutor implements Executor {
+
+    private final int maxReads;
+    private final ExecutorService executorService;
+    /**
+     * Bounds running virtual threads, null if the pool size bounds the reads.
+     */
+    private final Semaphore reads;
+
+    IoExecutor(int maxReads) {
+        this.maxReads = Math.max(1, maxReads);
+        final ExecutorService virtualThreads = virtualThreadPerTaskExecutor();
+        if (virtualThreads != null) {
+            log.info("Files are read on virtual threads");
+            this.executorService = virtualThreads;
+            this.reads = new Semaphore(this.maxReads);
+        } else {
+            log.info("Virtual threads are not supported, files are read by a pool of {} threads", this.maxReads);
+            this.executorService = threadPool(this.maxReads);
+            this.reads = null;
+        }
+    }
+
+    int getMaxReads() {
+        return maxReads;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (reads == null) {
+            executorService.execute(task);
+            return;
+        }
+        executorService.execute(() -> {
+            try {
+                reads.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                reads.release();
+            }
+        });
+    }
+
+    void shutdownNow() {
+        executorService.shutdownNow();
+    }
+
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService threadPool(int threads) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "jinx-file-reader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,91 @@
+package org.java.indexer.core.index;
+
+/**
+ * Levenshtein automaton accepting strings within {@code maxEdits} insertions, deletions, substitutions and
+ * transpositions of adjacent characters from the query. State after reading a prefix is the row of edit distances
+ * between the prefix and every prefix of the query. Distances never decrease below the row minimum when the prefix
+ * is extended, so the prefix is rejected once the minimum exceeds {@code maxEdits}.
+ * <p>States of the previous run are reused for the prefix shared with the next string,
+ * which is efficient for strings run in sorted order.
+ */
+class LevenshteinAutomaton {
+
+    private final String query;
+    private final int maxEdits;
+    private int[][] rows;
+    private String lastTerm = "";
+    private int computedRows = 1;
+
+    LevenshteinAutomaton(String query, int maxEdits) {
+        this.query = query;
+        this.maxEdits = maxEdits;
+        this.rows = new int[16][query.length() + 1];
+        for (int j = 0; j <= query.length(); j++) {
+            rows[0][j] = j;
+        }
+    }
+
+    /**
+     * Reads the string until the automaton rejects its prefix.
+     *
+     * @return length of the rejected prefix or -1 if the whole string is read, {@link #distance} is valid then
+     */
+    int run(String term) {
+        final int shared = Math.min(commonPrefixLength(lastTerm, term), computedRows - 1);
+        lastTerm = term;
+        if (rows.length <= term.length()) {
+            final int[][] newRows = new int[Math.max(rows.length * 2, term.length() + 1)][];
+            System.arraycopy(rows, 0, newRows, 0, rows.length);
+            for (int i = rows.length; i < newRows.length; i++) {
+                newRows[i] = new int[query.length() + 1];
+            }
+            rows = newRows;
+        }
+        for (int i = shared + 1; i <= term.length(); i++) {
+            if (!computeRow(term, i)) {
+                computedRows = i + 1;
+                return i;
+            }
+        }
+        computedRows = term.length() + 1;
+        return -1;
+    }
+
+    /**
+     * @return edit distance between the query and the last completely read string
+     */
+    int distance() {
+        return rows[lastTerm.length()][query.length()];
+    }
+
+    /**
+     * @return whether the row of the prefix of given length has distances within the limit
+     */
+    private boolean computeRow(String term, int i) {
+        final int[] previous = rows[i - 1];
+        final int[] row = rows[i];
+        final char c = term.charAt(i - 1);
+        row[0] = i;
+        int minimum = row[0];
+        for (int j = 1; j <= query.length(); j++) {
+            final char q = query.charAt(j - 1);
+            int distance = Math.min(Math.min(previous[j] + 1, row[j - 1] + 1), previous[j - 1] + (c == q ? 0 : 1));
+            if (i > 1 && j > 1 && c == query.charAt(j - 2) && term.charAt(i - 2) == q) {
+                distance = Math.min(distance, rows[i - 2][j - 2] + 1);
+            }
+            row[j] = distance;
+            minimum = Math.min(minimum, distance);
+        }
+        return minimum <= maxEdits;
+    }
+
+    private static int commonPrefixLength(String first, String second) {
+        final int length = Math.min(first.length(), second.length());
+        for (int i = 0; i < length; i++) {
+            if (first.charAt(i) != second.charAt(i)) {
+                return i;
+            }
+        }
+        return length;
+    }
+}
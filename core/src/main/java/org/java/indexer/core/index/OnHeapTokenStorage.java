@@ -0,0 +1,20 @@
+package org.java.indexer.core.index;
+
+import java.util.Collections;
+import java.util.Map;
+
+class OnHeapTokenStorage implements TokenStorage {
+
+    @Override
+    public Map<String, Integer> store(Map<String, Integer> countedTokens) {
+        return Collections.unmodifiableMap(countedTokens);
+    }
+
+    @Override
+    public void release(Map<String, Integer> storedTokens) {
+    }
+
+    @Override
+    public void clear() {
+    }
+}
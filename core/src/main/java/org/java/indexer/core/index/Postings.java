@@ -0,0 +1,188 @@
+package org.java.indexer.core.index;
+
+import java.util.Arrays;
+
+/**
+ * Ascending document ids of a token in a {@link Segment} with token quantities. Postings of tokens contained in less
+ * than 1/{@value #DENSE_RATIO} of segment documents are delta-encoded variable-length integers interleaved with
+ * quantities. Postings of more frequent tokens are a {@link DocumentBitmap} with quantities kept in a separate array,
+ * so boolean queries over common tokens are evaluated by bitwise operations.
+ */
+abstract class Postings {
+
+    /**
+     * Bitmap of a token contained in more than 1/32 of documents takes less memory than its 32-bit ids.
+     */
+    static final int DENSE_RATIO = 32;
+
+    /**
+     * @param documentIds    ascending document ids, only the first {@code size} are taken
+     * @param counts         token quantities in the documents
+     * @param documentsCount number of documents in the segment
+     */
+    static Postings of(int[] documentIds, int[] counts, int size, int documentsCount) {
+        if (size >= DENSE_RATIO && (long) size * DENSE_RATIO >= documentsCount) {
+            final int[] denseCounts = new int[size];
+            System.arraycopy(counts, 0, denseCounts, 0, size);
+            return new DensePostings(DocumentBitmap.of(documentIds, size), denseCounts);
+        }
+        return new SparsePostings(documentIds, counts, size);
+    }
+
+    abstract int size();
+
+    abstract Cursor cursor();
+
+    abstract DocumentBitmap toBitmap();
+
+    /**
+     * Iterates postings in ascending order of document ids.
+     */
+    interface Cursor {
+
+        /**
+         * @return the next document id or {@link DocumentBitmap#END}
+         */
+        int next();
+
+        /**
+         * @return the first document id not less than the target or {@link DocumentBitmap#END}
+         */
+        int advance(int target);
+
+        /**
+         * @return token quantity in the current document
+         */
+        int count();
+    }
+
+    private static final class SparsePostings extends Postings {
+        private final byte[] data;
+        private final int size;
+
+        private SparsePostings(int[] documentIds, int[] counts, int size) {
+            final byte[] buffer = new byte[size * 10];
+            int length = 0;
+            int previousId = 0;
+            for (int i = 0; i < size; i++) {
+                length = writeVarInt(buffer, length, documentIds[i] - previousId);
+                length = writeVarInt(buffer, length, counts[i]);
+                previousId = documentIds[i];
+            }
+            this.data = Arrays.copyOf(buffer, length);
+            this.size = size;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Cursor cursor() {
+            return new Cursor() {
+                private int position;
+                private int read;
+                private int documentId;
+                private int count;
+
+                @Override
+                public int next() {
+                    if (read == size) {
+                        return documentId = DocumentBitmap.END;
+                    }
+                    documentId += readVarInt();
+                    count = readVarInt();
+                    read++;
+                    return documentId;
+                }
+
+                @Override
+                public int advance(int target) {
+                    while (read == 0 || documentId < target) {
+                        if (next() == DocumentBitmap.END) {
+                            break;
+                        }
+                    }
+                    return documentId;
+                }
+
+                @Override
+                public int count() {
+                    return count;
+                }
+
+                private int readVarInt() {
+                    int value = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        final byte b = data[position++];
+                        value |= (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            return value;
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        DocumentBitmap toBitmap() {
+            final DocumentBitmap.Builder builder = new DocumentBitmap.Builder();
+            final Cursor cursor = cursor();
+            for (int documentId = cursor.next(); documentId != DocumentBitmap.END; documentId = cursor.next()) {
+                builder.add(documentId);
+            }
+            return builder.build();
+        }
+
+        private static int writeVarInt(byte[] buffer, int position, int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+            return position;
+        }
+    }
+
+    private static final class DensePostings extends Postings {
+        private final DocumentBitmap documents;
+        private final int[] counts;
+
+        private DensePostings(DocumentBitmap documents, int[] counts) {
+            this.documents = documents;
+            this.counts = counts;
+        }
+
+        @Override
+        int size() {
+            return counts.length;
+        }
+
+        @Override
+        Cursor cursor() {
+            final DocumentBitmap.Cursor documentsCursor = documents.cursor();
+            return new Cursor() {
+                @Override
+                public int next() {
+                    return documentsCursor.next();
+                }
+
+                @Override
+                public int advance(int target) {
+                    return documentsCursor.advance(target);
+                }
+
+                @Override
+                public int count() {
+                    return counts[documentsCursor.rank()];
+                }
+            };
+        }
+
+        @Override
+        DocumentBitmap toBitmap() {
+            return documents;
+        }
+    }
+}
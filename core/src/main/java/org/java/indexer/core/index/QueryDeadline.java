@@ -0,0 +1,77 @@
+package org.java.indexer.core.index;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget of a single query shared by all its shards. Deadline is checked cooperatively while iterating files
+ * and postings, once it is reached the query stops and returns occurrences gathered so far as a partial result.
+ * Deadline is checked only before some work, which is then skipped and {@link #skip() recorded}, so a query which
+ * has done all its work is never partial even if its deadline has passed.
+ */
+class QueryDeadline {
+
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final long started = System.nanoTime();
+    private final long deadline;
+    private final boolean bounded;
+    private volatile boolean expired;
+    private volatile boolean partial;
+
+    private QueryDeadline(Duration timeout) {
+        this.bounded = timeout != null;
+        this.deadline = bounded ? started + timeout.toNanos() : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param timeout time budget of the query, null means the query is not bounded
+     */
+    static QueryDeadline after(Duration timeout) {
+        return new QueryDeadline(timeout);
+    }
+
+    boolean isBounded() {
+        return bounded;
+    }
+
+    boolean isExpired() {
+        if (!expired && bounded && System.nanoTime() - deadline >= 0) {
+            expired = true;
+        }
+        return expired;
+    }
+
+    /**
+     * Reads the clock only every {@value #CHECK_INTERVAL} iterations to keep tight loops cheap.
+     */
+    boolean isExpired(int iteration) {
+        return iteration % CHECK_INTERVAL == 0 ? isExpired() : expired;
+    }
+
+    void expire() {
+        expired = true;
+    }
+
+    /**
+     * Records that some files, segments or shards are not searched because of the deadline.
+     */
+    void skip() {
+        partial = true;
+    }
+
+    long remainingNanos() {
+        return bounded ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return whether some part of the query was skipped because of the deadline
+     */
+    boolean isPartial() {
+        return partial;
+    }
+
+    long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+}
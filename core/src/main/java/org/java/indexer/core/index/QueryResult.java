@@ -1,5 +1,6 @@
 package org.java.indexer.core.index;
 
+import lombok.EqualsAndHashCode;
 import lombok.Value;
 
 import java.util.Map;
@@ -10,10 +11,25 @@ public class QueryResult {
     String queryString;
     Integer totalOccurrencesCount;
     Map<String, Integer> occurrences;
+    /**
+     * Query ran out of time and some files were not searched, occurrences are incomplete.
+     */
+    boolean partial;
+    /**
+     * Wall-clock time of the query, not a part of the result equality.
+     */
+    @EqualsAndHashCode.Exclude
+    long tookMillis;
 
     public QueryResult(String queryString, Map<String, Integer> occurrences) {
+        this(queryString, occurrences, false, 0);
+    }
+
+    public QueryResult(String queryString, Map<String, Integer> occurrences, boolean partial, long tookMillis) {
         this.queryString = queryString;
         this.occurrences = occurrences;
+        this.partial = partial;
+        this.tookMillis = tookMillis;
         totalOccurrencesCount = occurrences.values().stream().reduce(0, Integer::sum);
     }
 }
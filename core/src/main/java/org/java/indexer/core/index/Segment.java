@@ -0,0 +1,234 @@
+package org.java.indexer.core.index;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable read-optimized part of an {@link IndexShard}. Files are numbered by document ids,
+ * every token has {@link Postings}: ascending document ids with token quantities.
+ * <p>The only mutable state is the set of deleted documents (tombstones). It is replaced as a whole on every
+ * change, so readers holding a previously obtained set never observe partial updates.
+ * Deleted documents are purged when segments are merged.
+ */
+class Segment {
+
+    private final IndexedFile[] files;
+    private final Map<Path, Integer> documentIds;
+    private final Map<String, Postings> postings;
+    private volatile BitSet deletedDocuments = new BitSet();
+
+    private Segment(IndexedFile[] files, Map<String, Postings> postings) {
+        this.files = files;
+        this.postings = postings;
+        this.documentIds = new HashMap<>(files.length * 2);
+        for (int i = 0; i < files.length; i++) {
+            documentIds.put(files[i].getPath(), i);
+        }
+    }
+
+    /**
+     * Builds segment from files by reading their token maps.
+     */
+    static Segment build(Collection<IndexedFile> files) {
+        final IndexedFile[] documents = files.toArray(new IndexedFile[0]);
+        final Map<String, PostingsBuilder> builders = new HashMap<>();
+        for (int documentId = 0; documentId < documents.length; documentId++) {
+            final int id = documentId;
+            documents[documentId].getCountedTokens().forEach((token, count) ->
+                    builders.computeIfAbsent(token, key -> new PostingsBuilder()).add(id, count));
+        }
+        return new Segment(documents, build(builders, documents.length));
+    }
+
+    /**
+     * Merges not deleted documents of the segments into a new segment, documents deleted in the given
+     * {@code deletedDocuments} sets are purged. Token maps of the files are not read.
+     */
+    static Segment merge(List<Segment> segments, List<BitSet> deletedDocuments) {
+        final List<IndexedFile> documents = new ArrayList<>();
+        final Map<String, PostingsBuilder> builders = new HashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            final Segment segment = segments.get(i);
+            final BitSet deleted = deletedDocuments.get(i);
+            final int[] newDocumentIds = new int[segment.files.length];
+            for (int documentId = 0; documentId < segment.files.length; documentId++) {
+                if (deleted.get(documentId)) {
+                    newDocumentIds[documentId] = -1;
+                } else {
+                    newDocumentIds[documentId] = documents.size();
+                    documents.add(segment.files[documentId]);
+                }
+            }
+            segment.postings.forEach((token, tokenPostings) -> {
+                PostingsBuilder builder = null;
+                final Postings.Cursor cursor = tokenPostings.cursor();
+                for (int documentId = cursor.next(); documentId != DocumentBitmap.END; documentId = cursor.next()) {
+                    final int newDocumentId = newDocumentIds[documentId];
+                    if (newDocumentId >= 0) {
+                        if (builder == null) {
+                            builder = builders.computeIfAbsent(token, key -> new PostingsBuilder());
+                        }
+                        builder.add(newDocumentId, cursor.count());
+                    }
+                }
+            });
+        }
+        return new Segment(documents.toArray(new IndexedFile[0]), build(builders, documents.size()));
+    }
+
+    int size() {
+        return files.length;
+    }
+
+    BitSet getDeletedDocuments() {
+        return deletedDocuments;
+    }
+
+    int liveSize(BitSet deleted) {
+        return files.length - deleted.cardinality();
+    }
+
+    IndexedFile file(int documentId) {
+        return files[documentId];
+    }
+
+    /**
+     * @return id of the not deleted document with given path or -1
+     */
+    int find(Path path) {
+        final Integer documentId = documentIds.get(path);
+        return documentId == null || deletedDocuments.get(documentId) ? -1 : documentId;
+    }
+
+    /**
+     * Marks documents as deleted. Should be called holding the shard write lock.
+     */
+    void delete(BitSet documents) {
+        final BitSet deleted = (BitSet) deletedDocuments.clone();
+        deleted.or(documents);
+        deletedDocuments = deleted;
+    }
+
+    void delete(int documentId) {
+        final BitSet documents = new BitSet();
+        documents.set(documentId);
+        delete(documents);
+    }
+
+    /**
+     * @return ids of not deleted documents with paths inside the folder
+     */
+    BitSet findInFolder(Path folderPath) {
+        final BitSet documents = new BitSet();
+        final BitSet deleted = deletedDocuments;
+        for (int documentId = 0; documentId < files.length; documentId++) {
+            if (!deleted.get(documentId) && files[documentId].getPath().startsWith(folderPath.toString())) {
+                documents.set(documentId);
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Adds summed occurrences of the tokens in documents matching the operator and not deleted in {@code deleted} set
+     * until the deadline is reached. Matching documents of several tokens are found by intersection or union of
+     * their postings bitmaps, quantities are then looked up by advancing postings cursors.
+     */
+    void query(List<String> tokens, BooleanOperator operator, BitSet deleted, Map<String, Integer> occurrences,
+               QueryDeadline deadline) {
+        final List<Postings> tokensPostings = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            final Postings tokenPostings = postings.get(token);
+            if (tokenPostings != null) {
+                tokensPostings.add(tokenPostings);
+            } else if (operator == BooleanOperator.AND) {
+                return;
+            }
+        }
+        if (tokensPostings.isEmpty()) {
+            return;
+        }
+        if (tokensPostings.size() == 1) {
+            final Postings.Cursor cursor = tokensPostings.get(0).cursor();
+            int i = 0;
+            for (int documentId = cursor.next(); documentId != DocumentBitmap.END; documentId = cursor.next()) {
+                if (deadline.isExpired(i++)) {
+                    deadline.skip();
+                    return;
+                }
+                if (!deleted.get(documentId)) {
+                    occurrences.put(files[documentId].getPath().toString(), cursor.count());
+                }
+            }
+            return;
+        }
+        tokensPostings.sort(Comparator.comparingInt(Postings::size));
+        DocumentBitmap matched = tokensPostings.get(0).toBitmap();
+        for (int i = 1; i < tokensPostings.size() && !matched.isEmpty(); i++) {
+            if (deadline.isExpired()) {
+                deadline.skip();
+                return;
+            }
+            final DocumentBitmap tokenDocuments = tokensPostings.get(i).toBitmap();
+            matched = operator == BooleanOperator.AND ? matched.and(tokenDocuments) : matched.or(tokenDocuments);
+        }
+        final Postings.Cursor[] cursors = tokensPostings.stream().map(Postings::cursor).toArray(Postings.Cursor[]::new);
+        final DocumentBitmap.Cursor matchedCursor = matched.cursor();
+        int i = 0;
+        for (int documentId = matchedCursor.next(); documentId != DocumentBitmap.END; documentId = matchedCursor.next()) {
+            if (deadline.isExpired(i++)) {
+                deadline.skip();
+                return;
+            }
+            if (deleted.get(documentId)) {
+                continue;
+            }
+            int count = 0;
+            for (Postings.Cursor cursor : cursors) {
+                if (cursor.advance(documentId) == documentId) {
+                    count += cursor.count();
+                }
+            }
+            occurrences.put(files[documentId].getPath().toString(), count);
+        }
+    }
+
+    void collectLiveFiles(BitSet deleted, Collection<IndexedFile> liveFiles) {
+        for (int documentId = deleted.nextClearBit(0); documentId < files.length; documentId = deleted.nextClearBit(documentId + 1)) {
+            liveFiles.add(files[documentId]);
+        }
+    }
+
+    private static Map<String, Postings> build(Map<String, PostingsBuilder> builders, int documentsCount) {
+        final Map<String, Postings> postings = new HashMap<>(builders.size() * 2);
+        builders.forEach((token, builder) -> postings.put(token, builder.build(documentsCount)));
+        return postings;
+    }
+
+    private static class PostingsBuilder {
+        private int[] documentIds = new int[2];
+        private int[] counts = new int[2];
+        private int size;
+
+        private void add(int documentId, int count) {
+            if (size == documentIds.length) {
+                documentIds = Arrays.copyOf(documentIds, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            documentIds[size] = documentId;
+            counts[size] = count;
+            size++;
+        }
+
+        private Postings build(int documentsCount) {
+            return Postings.of(documentIds, counts, size, documentsCount);
+        }
+    }
+}
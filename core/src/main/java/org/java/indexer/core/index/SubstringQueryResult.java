@@ -0,0 +1,34 @@
+package org.java.indexer.core.index;
+
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+
+import java.util.Map;
+
+@Value
+public class SubstringQueryResult {
+
+    String queryString;
+    Integer totalOccurrencesCount;
+    /**
+     * Results of matched tokens containing the query string, most frequent tokens first.
+     */
+    Map<String, QueryResult> matches;
+    /**
+     * Query ran out of time and some matched tokens or files were not searched.
+     */
+    boolean partial;
+    /**
+     * Wall-clock time of the query, not a part of the result equality.
+     */
+    @EqualsAndHashCode.Exclude
+    long tookMillis;
+
+    public SubstringQueryResult(String queryString, Map<String, QueryResult> matches, boolean partial, long tookMillis) {
+        this.queryString = queryString;
+        this.matches = matches;
+        this.partial = partial;
+        this.tookMillis = tookMillis;
+        totalOccurrencesCount = matches.values().stream().map(QueryResult::getTotalOccurrencesCount).reduce(0, Integer::sum);
+    }
+}
@@ -0,0 +1,169 @@
+package org.java.indexer.core.index;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Sorted dictionary of tokens of indexed files with {@link TermStatistics} of every token.
+ * It is updated for every file added to or removed from the index and might be read without index locks.
+ * <p>Statistics of a term are replaced atomically together with its place in the ranking of the most frequent terms,
+ * its place in the sorted term set and, if enabled, its trigrams in the {@link TrigramIndex}. So an update costs
+ * a few logarithmic operations per changed term and top terms are read from the head of the ranking.
+ */
+class TermDictionary {
+
+    private static final Comparator<TermStatistics> RANKING_ORDER = Comparator
+            .comparingInt(TermStatistics::getDocumentFrequency).reversed()
+            .thenComparing(Comparator.comparingLong(TermStatistics::getTotalFrequency).reversed())
+            .thenComparing(TermStatistics::getToken);
+
+    private final ConcurrentHashMap<String, TermStatistics> statistics = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> terms = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<TermStatistics> ranking = new ConcurrentSkipListSet<>(RANKING_ORDER);
+    private final TrigramIndex trigramIndex;
+
+    TermDictionary(boolean trigramIndex) {
+        this.trigramIndex = trigramIndex ? new TrigramIndex() : null;
+    }
+
+    void add(Map<String, Integer> countedTokens) {
+        countedTokens.forEach((token, count) -> add(token, new TermStatistics(token, 1, count)));
+    }
+
+    /**
+     * Counts statistics of several files summed up by term.
+     */
+    void addAll(Map<String, TermStatistics> termStatistics) {
+        termStatistics.forEach(this::add);
+    }
+
+    private void add(String token, TermStatistics added) {
+        statistics.compute(token, (key, current) -> {
+            if (current == null) {
+                terms.add(key);
+                if (trigramIndex != null) {
+                    trigramIndex.add(key);
+                }
+            } else {
+                ranking.remove(current);
+            }
+            final TermStatistics updated = current == null ? added : current.merged(added);
+            ranking.add(updated);
+            return updated;
+        });
+    }
+
+    void remove(Map<String, Integer> countedTokens) {
+        countedTokens.forEach((token, count) -> statistics.computeIfPresent(token, (key, current) -> {
+            ranking.remove(current);
+            if (current.getDocumentFrequency() == 1) {
+                terms.remove(key);
+                if (trigramIndex != null) {
+                    trigramIndex.remove(key);
+                }
+                return null;
+            }
+            final TermStatistics updated = current.removed(count);
+            ranking.add(updated);
+            return updated;
+        }));
+    }
+
+    int documentFrequency(String token) {
+        final TermStatistics termStatistics = statistics.get(token);
+        return termStatistics == null ? 0 : termStatistics.getDocumentFrequency();
+    }
+
+    /**
+     * @return statistics of the token, zero frequencies if it is not indexed
+     */
+    TermStatistics statistics(String token) {
+        return statistics.getOrDefault(token, new TermStatistics(token, 0, 0));
+    }
+
+    /**
+     * @return at most {@code k} terms contained in the largest number of files, ties are broken by total frequency
+     */
+    List<TermStatistics> top(int k) {
+        return ranking.stream().limit(k).collect(Collectors.toList());
+    }
+
+    int size() {
+        return statistics.size();
+    }
+
+    void clear() {
+        statistics.clear();
+        terms.clear();
+        ranking.clear();
+        if (trigramIndex != null) {
+            trigramIndex.clear();
+        }
+    }
+
+    /**
+     * Finds terms containing the fragment. Candidates are narrowed by the trigram index if it is enabled and
+     * the fragment is long enough, otherwise all the terms are scanned.
+     *
+     * @return matched terms with number of files containing them
+     */
+    Map<String, Integer> findContaining(String fragment) {
+        final Map<String, Integer> matched = new HashMap<>();
+        final Consumer<String> verifier = term -> {
+            final TermStatistics termStatistics = statistics.get(term);
+            if (termStatistics != null && term.contains(fragment)) {
+                matched.put(term, termStatistics.getDocumentFrequency());
+            }
+        };
+        if (trigramIndex != null && fragment.length() >= TrigramIndex.GRAM_SIZE) {
+            trigramIndex.forEachCandidate(fragment, verifier);
+        } else {
+            terms.forEach(verifier);
+        }
+        return matched;
+    }
+
+    /**
+     * Intersects Levenshtein automaton of the token with the dictionary. Terms are visited in sorted order,
+     * all terms starting with a prefix the automaton rejects are skipped by a single lookup, so only terms
+     * sharing prefixes with possible matches are visited.
+     *
+     * @return terms within {@code maxEdits} from the token with their edit distances
+     */
+    Map<String, Integer> findSimilar(String token, int maxEdits) {
+        final LevenshteinAutomaton automaton = new LevenshteinAutomaton(token, maxEdits);
+        final Map<String, Integer> similar = new HashMap<>();
+        String term = terms.ceiling("");
+        while (term != null) {
+            final int rejectedPrefix = automaton.run(term);
+            if (rejectedPrefix >= 0) {
+                final String next = successor(term, rejectedPrefix);
+                term = next == null ? null : terms.ceiling(next);
+                continue;
+            }
+            if (automaton.distance() <= maxEdits) {
+                similar.put(term, automaton.distance());
+            }
+            term = terms.higher(term);
+        }
+        return similar;
+    }
+
+    /**
+     * @return the least string greater than all strings starting with the prefix of given length or null
+     */
+    private static String successor(String term, int prefixLength) {
+        for (int i = prefixLength - 1; i >= 0; i--) {
+            if (term.charAt(i) != Character.MAX_VALUE) {
+                return term.substring(0, i) + (char) (term.charAt(i) + 1);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package org.java.indexer.core.index;
+
+import lombok.Value;
+
+@Value
+public class TermStatistics {
+
+    String token;
+    /**
+     * Number of indexed files containing the token.
+     */
+    int documentFrequency;
+    /**
+     * Number of occurrences of the token in all indexed files.
+     */
+    long totalFrequency;
+
+    TermStatistics merged(TermStatistics other) {
+        return new TermStatistics(token, documentFrequency + other.documentFrequency, totalFrequency + other.totalFrequency);
+    }
+
+    TermStatistics removed(int count) {
+        return new TermStatistics(token, documentFrequency - 1, totalFrequency - count);
+    }
+}
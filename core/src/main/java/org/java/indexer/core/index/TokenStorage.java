@@ -0,0 +1,26 @@
+package org.java.indexer.core.index;
+
+import java.util.Map;
+
+/**
+ * Keeps tokenized files of the index. Maps returned by {@link #store} are immutable
+ * and stay valid until they are passed to {@link #release}.
+ */
+interface TokenStorage {
+
+    /**
+     * @param countedTokens tokens of a single file and its quantities
+     * @return map with the same content placed in this storage
+     */
+    Map<String, Integer> store(Map<String, Integer> countedTokens);
+
+    /**
+     * Frees memory held by the map previously returned by {@link #store}.
+     */
+    void release(Map<String, Integer> storedTokens);
+
+    /**
+     * Frees memory held by every stored map.
+     */
+    void clear();
+}
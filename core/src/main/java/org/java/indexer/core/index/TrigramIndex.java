@@ -0,0 +1,73 @@
+package org.java.indexer.core.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Index of distinct terms by their trigrams, i.e. substrings of three characters. Every term containing a string
+ * contains all its trigrams, so candidates for substring search are found by intersection of the trigram postings.
+ * Terms shorter than three characters have no trigrams and are not indexed.
+ */
+class TrigramIndex {
+
+    static final int GRAM_SIZE = 3;
+
+    private final ConcurrentHashMap<String, Set<String>> postings = new ConcurrentHashMap<>();
+
+    void add(String term) {
+        for (String trigram : trigramsOf(term)) {
+            postings.compute(trigram, (key, terms) -> {
+                final Set<String> updated = terms == null ? ConcurrentHashMap.newKeySet() : terms;
+                updated.add(term);
+                return updated;
+            });
+        }
+    }
+
+    void remove(String term) {
+        for (String trigram : trigramsOf(term)) {
+            postings.computeIfPresent(trigram, (key, terms) -> terms.remove(term) && terms.isEmpty() ? null : terms);
+        }
+    }
+
+    /**
+     * Passes terms containing all trigrams of the fragment to the consumer, candidates still have to be verified
+     * to contain the fragment itself.
+     *
+     * @param fragment string of at least {@link #GRAM_SIZE} characters
+     */
+    void forEachCandidate(String fragment, Consumer<String> consumer) {
+        final List<Set<String>> candidatePostings = new ArrayList<>();
+        for (String trigram : trigramsOf(fragment)) {
+            final Set<String> terms = postings.get(trigram);
+            if (terms == null) {
+                return;
+            }
+            candidatePostings.add(terms);
+        }
+        candidatePostings.sort(Comparator.comparingInt(Set::size));
+        final List<Set<String>> others = candidatePostings.subList(1, candidatePostings.size());
+        for (String term : candidatePostings.get(0)) {
+            if (others.stream().allMatch(terms -> terms.contains(term))) {
+                consumer.accept(term);
+            }
+        }
+    }
+
+    void clear() {
+        postings.clear();
+    }
+
+    private static Set<String> trigramsOf(String term) {
+        final Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= term.length(); i++) {
+            trigrams.add(term.substring(i, i + GRAM_SIZE));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,99 @@
+package org.java.indexer.core.tokenizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+/**
+ * Tokenizes line aligned byte ranges of a single file in parallel and merges counted tokens.
+ * Gives the same result as sequential line by line tokenization with the same charset.
+ * Decoding errors are rethrown as {@link UncheckedIOException}, so caller may fall back to another charset.
+ */
+@SuppressWarnings("serial")
+class ChunkTokenizationTask extends RecursiveTask<TokenCounter> {
+
+    private final FileChannel channel;
+    private final long[] bounds;
+    private final int from;
+    private final int to;
+    private final Charset charset;
+    private final Pattern regEx;
+
+    /**
+     * @param bounds ascending chunk bounds, chunks from {@code from} inclusive to {@code to} exclusive are processed
+     */
+    ChunkTokenizationTask(FileChannel channel, long[] bounds, int from, int to, Charset charset, Pattern regEx) {
+        this.channel = channel;
+        this.bounds = bounds;
+        this.from = from;
+        this.to = to;
+        this.charset = charset;
+        this.regEx = regEx;
+    }
+
+    @Override
+    protected TokenCounter compute() {
+        if (to - from == 1) {
+            return tokenizeChunk(bounds[from], bounds[to]);
+        }
+        final int middle = (from + to) >>> 1;
+        final ChunkTokenizationTask left = new ChunkTokenizationTask(channel, bounds, from, middle, charset, regEx);
+        final ChunkTokenizationTask right = new ChunkTokenizationTask(channel, bounds, middle, to, charset, regEx);
+        left.fork();
+        final TokenCounter rightResult = right.compute();
+        final TokenCounter leftResult = left.join();
+        return merge(leftResult, rightResult);
+    }
+
+    private TokenCounter tokenizeChunk(long start, long end) {
+        final TokenCounter result = new TokenCounter();
+        final LineSplitter splitter = new LineSplitter(regEx, result);
+        final CharBuffer chars;
+        try {
+            final ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(end - start));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, start + bytes.position()) < 0) {
+                    break;
+                }
+            }
+            bytes.flip();
+            final CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            chars = decoder.decode(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int lineStart = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            final char c = chars.charAt(i);
+            if (c == '\n' || c == '\r') {
+                splitLine(chars, lineStart, i, splitter);
+                lineStart = i + 1;
+            }
+        }
+        splitLine(chars, lineStart, chars.length(), splitter);
+        return result;
+    }
+
+    private static void splitLine(CharBuffer chars, int start, int end, LineSplitter splitter) {
+        if (start < end) {
+            splitter.split(chars.subSequence(start, end));
+        }
+    }
+
+    private static TokenCounter merge(TokenCounter first, TokenCounter second) {
+        final TokenCounter larger = first.size() >= second.size() ? first : second;
+        final TokenCounter smaller = larger == first ? second : first;
+        larger.merge(smaller);
+        return larger;
+    }
+}
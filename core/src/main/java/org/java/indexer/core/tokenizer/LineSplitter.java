@@ -0,0 +1,40 @@
+package org.java.indexer.core.tokenizer;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits lines around matches of the pattern and pushes non-blank parts to the sink, which gives the same tokens
+ * as {@link Pattern#split} with blank tokens filtered out. Tokens are pushed as views of the line.
+ * Splitter reuses its matcher, so it should be used by a single thread.
+ */
+class LineSplitter {
+
+    private final Matcher matcher;
+    private final TokenSink sink;
+    private final TokenView view = new TokenView();
+
+    LineSplitter(Pattern regEx, TokenSink sink) {
+        this.matcher = regEx.matcher("");
+        this.sink = sink;
+    }
+
+    void split(CharSequence line) {
+        matcher.reset(line);
+        int start = 0;
+        while (matcher.find()) {
+            push(line, start, matcher.start());
+            start = matcher.end();
+        }
+        push(line, start, line.length());
+    }
+
+    private void push(CharSequence line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                sink.accept(view.set(line, start, end));
+                return;
+            }
+        }
+    }
+}
@@ -2,58 +2,216 @@ package org.java.indexer.core.tokenizer;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Pattern;
 
 import static java.nio.charset.StandardCharsets.UTF_16;
+import static java.nio.charset.StandardCharsets.UTF_16BE;
+import static java.nio.charset.StandardCharsets.UTF_16LE;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static org.java.indexer.core.utils.FileUtils.parseAndConsume;
+import static org.java.indexer.core.utils.FileUtils.findLineAlignedChunks;
 
 @Slf4j
-public class RegexTokenizer implements Tokenizer {
+public class RegexTokenizer implements StreamingTokenizer {
 
     private static final String DEFAULT_REGEX = "[^A-Za-z0-9_А-яЁё]";
 
     private static final List<Charset> SUPPORTED_ENCODINGS = List.of(UTF_8, UTF_16);
-    private static final Function<Map<String, Integer>, Consumer<String>> RESULT_AGGREGATOR_SUPPLIER =
-            map -> token -> map.compute(token, (key, count) -> Optional.ofNullable(count).orElse(0) + 1);
+
+    private static final long DEFAULT_PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+    private static final long MIN_CHUNK_SIZE = 1024L * 1024;
+    private static final long MAX_CHUNK_SIZE = 32L * 1024 * 1024;
 
     private final Pattern regEx;
+    private final long parallelThreshold;
+    private final long chunkSize;
 
 
     public RegexTokenizer(Pattern regEx) {
-        this.regEx = regEx;
+        this(regEx, DEFAULT_PARALLEL_THRESHOLD);
     }
 
     public RegexTokenizer() {
-        this.regEx = Pattern.compile(DEFAULT_REGEX);
+        this(Pattern.compile(DEFAULT_REGEX));
+    }
+
+    /**
+     * @param regEx             pattern used to split file lines into tokens
+     * @param parallelThreshold size in bytes starting from which a file is split into line aligned chunks
+     *                          tokenized in parallel on the fork/join pool of the caller
+     */
+    public RegexTokenizer(Pattern regEx, long parallelThreshold) {
+        this(regEx, parallelThreshold, 0);
+    }
+
+    /**
+     * @param chunkSize size in bytes of chunks of a large file, 0 means it is chosen by the file size
+     */
+    RegexTokenizer(Pattern regEx, long parallelThreshold, long chunkSize) {
+        this.regEx = regEx;
+        this.parallelThreshold = parallelThreshold;
+        this.chunkSize = chunkSize;
     }
 
     @Override
     public Map<String, Integer> tokenize(Path path) {
-        Map<String, Integer> result = new HashMap<>();
-        final Consumer<String> resultAggregator = RESULT_AGGREGATOR_SUPPLIER.apply(result);
+        return count(path).toMap();
+    }
+
+    /**
+     * Tokens are counted before they are pushed, as the file is tokenized again if the encoding turns out to be
+     * wrong. Every distinct token is pushed once with its quantity.
+     */
+    @Override
+    public void tokenize(Path path, TokenSink sink) {
+        count(path).forEach(sink);
+    }
 
+    @Override
+    public Map<String, Integer> tokenize(Path path, byte[] content) {
+        return count(path, content).toMap();
+    }
+
+    /**
+     * Content is decoded with the same encodings as the file itself.
+     */
+    @Override
+    public void tokenize(Path path, byte[] content, TokenSink sink) {
+        count(path, content).forEach(sink);
+    }
+
+    /**
+     * Detects encoding by byte order mark, content without it is decoded as UTF-8.
+     * Malformed input is replaced, as the stream cannot be read again with another encoding.
+     */
+    @Override
+    public void tokenize(InputStream content, TokenSink sink) {
+        try {
+            final BufferedInputStream input = new BufferedInputStream(content);
+            final Charset encoding = readByteOrderMark(input);
+            final CharsetDecoder decoder = encoding.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            splitLines(new BufferedReader(new InputStreamReader(input, decoder)), new LineSplitter(regEx, sink));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private TokenCounter count(Path path) {
         for (Charset encoding : SUPPORTED_ENCODINGS) {
-            try {
-                parseAndConsume(path, resultAggregator, encoding, regEx);
+            if (UTF_8.equals(encoding) && isLarge(path)) {
+                final Optional<TokenCounter> parallelResult = tokenizeInParallel(path, encoding);
+                if (parallelResult.isPresent()) {
+                    return parallelResult.get();
+                }
+                continue;
+            }
+            final TokenCounter result = new TokenCounter();
+            try (final BufferedReader reader = Files.newBufferedReader(path, encoding)) {
+                splitLines(reader, new LineSplitter(regEx, result));
                 log.info("File {} parsed with {} encoding", path, encoding.name());
-                break;
+                return result;
             } catch (IOException e) {
                 log.error("File {} cannot be parsed with {} encoding", path, encoding.name());
             }
         }
+        return new TokenCounter();
+    }
 
-        return result;
+    private TokenCounter count(Path path, byte[] content) {
+        for (Charset encoding : SUPPORTED_ENCODINGS) {
+            final TokenCounter result = new TokenCounter();
+            try (final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new ByteArrayInputStream(content), encoding.newDecoder()))) {
+                splitLines(reader, new LineSplitter(regEx, result));
+                log.info("File {} parsed with {} encoding", path, encoding.name());
+                return result;
+            } catch (IOException e) {
+                log.error("File {} cannot be parsed with {} encoding", path, encoding.name());
+            }
+        }
+        return new TokenCounter();
+    }
+
+    private static void splitLines(BufferedReader reader, LineSplitter splitter) throws IOException {
+        String line = reader.readLine();
+        while (line != null) {
+            splitter.split(line);
+            line = reader.readLine();
+        }
+    }
+
+    /**
+     * Skips byte order mark if the stream starts with it.
+     *
+     * @return encoding defined by byte order mark or UTF-8
+     */
+    private static Charset readByteOrderMark(BufferedInputStream input) throws IOException {
+        input.mark(3);
+        final int first = input.read();
+        final int second = input.read();
+        if (first == 0xFE && second == 0xFF) {
+            return UTF_16BE;
+        }
+        if (first == 0xFF && second == 0xFE) {
+            return UTF_16LE;
+        }
+        if (first == 0xEF && second == 0xBB && input.read() == 0xBF) {
+            return UTF_8;
+        }
+        input.reset();
+        return UTF_8;
     }
 
+    private boolean isLarge(Path path) {
+        try {
+            return Files.size(path) >= parallelThreshold;
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
+    private Optional<TokenCounter> tokenizeInParallel(Path path, Charset encoding) {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long[] bounds = findLineAlignedChunks(channel, chunkSize > 0 ? chunkSize : chunkSize(channel.size()));
+            final ChunkTokenizationTask task = new ChunkTokenizationTask(channel, bounds, 0, bounds.length - 1, encoding, regEx);
+            final TokenCounter result = ForkJoinTask.inForkJoinPool() ? task.invoke() : tokenizationPool().invoke(task);
+            log.info("File {} parsed with {} encoding in {} chunks", path, encoding.name(), bounds.length - 1);
+            return Optional.of(result);
+        } catch (IOException | UncheckedIOException | ArithmeticException e) {
+            log.error("File {} cannot be parsed with {} encoding in chunks", path, encoding.name());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Chunks are tokenized in the pool of the calling thread, e.g. by workers of the index, or in the common pool,
+     * so the tokenizer owns no threads.
+     */
+    private static ForkJoinPool tokenizationPool() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    }
+
+    private static long chunkSize(long fileSize) {
+        return Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, fileSize / (4L * tokenizationPool().getParallelism())));
+    }
 }
@@ -0,0 +1,68 @@
+package org.java.indexer.core.tokenizer;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Tokenizer pushing tokens to {@link TokenSink} instead of building a map, so token occurrences
+ * are counted without creating a string per occurrence. Map returning methods count pushed tokens by default.
+ * Any {@link Tokenizer} might be used as streaming one via {@link StreamingTokenizer#of}.
+ */
+public interface StreamingTokenizer extends Tokenizer {
+
+    /**
+     * @param path of file to process
+     * @param sink receiver of the file tokens
+     */
+    void tokenize(Path path, TokenSink sink);
+
+    /**
+     * @param path    of file the content is read from
+     * @param content whole file content, decoded the same way as the file
+     * @param sink    receiver of the file tokens
+     */
+    default void tokenize(Path path, byte[] content, TokenSink sink) {
+        tokenize(path, sink);
+    }
+
+    /**
+     * @param content stream of file content, it is read but not closed
+     * @param sink    receiver of the content tokens
+     * @throws UnsupportedOperationException if tokenizer supports only files
+     */
+    default void tokenize(InputStream content, TokenSink sink) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " supports files only");
+    }
+
+    @Override
+    default Map<String, Integer> tokenize(Path path) {
+        final TokenCounter counter = new TokenCounter();
+        tokenize(path, counter);
+        return counter.toMap();
+    }
+
+    @Override
+    default Map<String, Integer> tokenize(Path path, byte[] content) {
+        final TokenCounter counter = new TokenCounter();
+        tokenize(path, content, counter);
+        return counter.toMap();
+    }
+
+    @Override
+    default Map<String, Integer> tokenize(InputStream content) {
+        final TokenCounter counter = new TokenCounter();
+        tokenize(content, counter);
+        return counter.toMap();
+    }
+
+    /**
+     * @return the tokenizer itself if it is streaming or adapter pushing entries of maps returned by it
+     */
+    static StreamingTokenizer of(Tokenizer tokenizer) {
+        if (tokenizer instanceof StreamingTokenizer) {
+            return (StreamingTokenizer) tokenizer;
+        }
+        return new TokenizerAdapter(tokenizer);
+    }
+}
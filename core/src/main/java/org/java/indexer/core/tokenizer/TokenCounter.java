@@ -0,0 +1,210 @@
+package org.java.indexer.core.tokenizer;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Counts pushed tokens in an open addressing hash table looked up by token characters,
+ * so a string is created only for the first occurrence of every distinct token.
+ * Counted tokens are returned as a map backed by the same table, without copying them into entries.
+ */
+public class TokenCounter implements TokenSink {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] tokens = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    @Override
+    public void accept(CharSequence token, int count) {
+        add(token, hash(token), count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds counted tokens of another counter to this one.
+     */
+    void merge(TokenCounter other) {
+        for (int slot = 0; slot < other.tokens.length; slot++) {
+            if (other.tokens[slot] != null) {
+                add(other.tokens[slot], other.hashes[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Pushes every counted token once with its quantity.
+     */
+    void forEach(TokenSink sink) {
+        for (int slot = 0; slot < tokens.length; slot++) {
+            if (tokens[slot] != null) {
+                sink.accept(tokens[slot], counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return immutable map backed by the table of the counter, the counter should not be used after that
+     */
+    public Map<String, Integer> toMap() {
+        return new CountedTokens(tokens, counts, size);
+    }
+
+    private void add(CharSequence token, int hash, int count) {
+        final int slot = find(tokens, hashes, token, hash);
+        if (tokens[slot] != null) {
+            counts[slot] += count;
+            return;
+        }
+        tokens[slot] = token.toString();
+        hashes[slot] = hash;
+        counts[slot] = count;
+        if (++size * 2 > tokens.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        final String[] newTokens = new String[tokens.length * 2];
+        final int[] newHashes = new int[newTokens.length];
+        final int[] newCounts = new int[newTokens.length];
+        for (int slot = 0; slot < tokens.length; slot++) {
+            if (tokens[slot] != null) {
+                final int newSlot = find(newTokens, newHashes, tokens[slot], hashes[slot]);
+                newTokens[newSlot] = tokens[slot];
+                newHashes[newSlot] = hashes[slot];
+                newCounts[newSlot] = counts[slot];
+            }
+        }
+        tokens = newTokens;
+        hashes = newHashes;
+        counts = newCounts;
+    }
+
+    /**
+     * @return slot holding the token or empty slot the token should be placed to
+     */
+    private static int find(String[] tokens, int[] hashes, CharSequence token, int hash) {
+        final int mask = tokens.length - 1;
+        int slot = spread(hash) & mask;
+        while (tokens[slot] != null && (hashes[slot] != hash || !tokens[slot].contentEquals(token))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return the same value as {@link String#hashCode} of the token
+     */
+    private static int hash(CharSequence token) {
+        int hash = 0;
+        for (int i = 0; i < token.length(); i++) {
+            hash = 31 * hash + token.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        final int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+
+    /**
+     * Token map taking two arrays instead of an entry and a boxed quantity per token.
+     */
+    private static final class CountedTokens extends AbstractMap<String, Integer> {
+        private final String[] tokens;
+        private final int[] counts;
+        private final int size;
+
+        private CountedTokens(String[] tokens, int[] counts, int size) {
+            this.tokens = tokens;
+            this.counts = counts;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            final String token = (String) key;
+            final int mask = tokens.length - 1;
+            for (int slot = spread(token.hashCode()) & mask; tokens[slot] != null; slot = (slot + 1) & mask) {
+                if (tokens[slot].equals(token)) {
+                    return counts[slot];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super String, ? super Integer> action) {
+            for (int slot = 0; slot < tokens.length; slot++) {
+                if (tokens[slot] != null) {
+                    action.accept(tokens[slot], counts[slot]);
+                }
+            }
+        }
+
+        @Override
+        public Set<Entry<String, Integer>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Integer>> iterator() {
+                    return new Iterator<>() {
+                        private int slot = nextSlot(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return slot < tokens.length;
+                        }
+
+                        @Override
+                        public Entry<String, Integer> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final Entry<String, Integer> entry = Map.entry(tokens[slot], counts[slot]);
+                            slot = nextSlot(slot + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        private int nextSlot(int from) {
+            int slot = from;
+            while (slot < tokens.length && tokens[slot] == null) {
+                slot++;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.java.indexer.core.tokenizer;
+
+import java.nio.CharBuffer;
+
+/**
+ * Receives tokens pushed by {@link StreamingTokenizer}. Token passed to the sink is a view valid only
+ * during the call, sink should copy it if the token is kept, e.g. via {@link CharSequence#toString}.
+ */
+@FunctionalInterface
+public interface TokenSink {
+
+    /**
+     * @param token view of the token
+     * @param count number of token occurrences
+     */
+    void accept(CharSequence token, int count);
+
+    default void accept(CharSequence token) {
+        accept(token, 1);
+    }
+
+    default void accept(char[] chars, int offset, int length) {
+        accept(CharBuffer.wrap(chars, offset, length), 1);
+    }
+}
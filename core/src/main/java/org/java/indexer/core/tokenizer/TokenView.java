@@ -0,0 +1,38 @@
+package org.java.indexer.core.tokenizer;
+
+/**
+ * Reusable view of a part of character sequence, allows pushing tokens to {@link TokenSink} without copying them.
+ */
+class TokenView implements CharSequence {
+
+    private CharSequence source;
+    private int start;
+    private int end;
+
+    TokenView set(CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return source.subSequence(start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        return source.subSequence(start, end).toString();
+    }
+}
@@ -1,5 +1,6 @@
 package org.java.indexer.core.tokenizer;
 
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Map;
 
@@ -18,4 +19,28 @@ public interface Tokenizer {
      */
     Map<String, Integer> tokenize(Path path);
 
+    /**
+     * Tokenizes content of the file which is already read, e.g. by an I/O thread. Content should be decoded
+     * the same way as the file. Tokenizers which do not implement it read the file again.
+     *
+     * @param path    of file the content is read from
+     * @param content whole file content
+     * @return map of tokens as strings and its quantities
+     */
+    default Map<String, Integer> tokenize(Path path, byte[] content) {
+        return tokenize(path);
+    }
+
+    /**
+     * Tokenizes content which is not stored as a file, e.g. archive entry. Tokenizers supporting only files
+     * do not implement it, such content is not indexed then.
+     *
+     * @param content stream of file content, it is read but not closed
+     * @return map of tokens as strings and its quantities
+     * @throws UnsupportedOperationException if tokenizer supports only files
+     */
+    default Map<String, Integer> tokenize(InputStream content) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " supports files only");
+    }
+
 }
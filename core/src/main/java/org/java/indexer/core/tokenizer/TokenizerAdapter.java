@@ -0,0 +1,47 @@
+package org.java.indexer.core.tokenizer;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Streaming view of map returning {@link Tokenizer}. Maps are returned as is, without counting them again.
+ */
+class TokenizerAdapter implements StreamingTokenizer {
+
+    private final Tokenizer tokenizer;
+
+    TokenizerAdapter(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    @Override
+    public void tokenize(Path path, TokenSink sink) {
+        tokenizer.tokenize(path).forEach(sink::accept);
+    }
+
+    @Override
+    public void tokenize(Path path, byte[] content, TokenSink sink) {
+        tokenizer.tokenize(path, content).forEach(sink::accept);
+    }
+
+    @Override
+    public void tokenize(InputStream content, TokenSink sink) {
+        tokenizer.tokenize(content).forEach(sink::accept);
+    }
+
+    @Override
+    public Map<String, Integer> tokenize(Path path) {
+        return tokenizer.tokenize(path);
+    }
+
+    @Override
+    public Map<String, Integer> tokenize(Path path, byte[] content) {
+        return tokenizer.tokenize(path, content);
+    }
+
+    @Override
+    public Map<String, Integer> tokenize(InputStream content) {
+        return tokenizer.tokenize(content);
+    }
+}
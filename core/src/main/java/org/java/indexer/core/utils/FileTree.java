@@ -0,0 +1,141 @@
+package org.java.indexer.core.utils;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Folders and files of a folder tree listed by a single traversal, so the same walk feeds both the index and
+ * the folder watcher. Every folder is listed by its own fork/join task and subfolders are split across threads,
+ * which overlaps listing latency of slow file systems like NFS. Walking threads mostly wait for I/O, so there are
+ * {@value #THREADS_PER_CORE} of them per core.
+ * <p>Ignored folders are not listed at all, the root folder itself is never ignored. Folders which cannot be listed
+ * are reported in {@link #getUnreadableFolders} and the rest of the tree is still walked. Symbolic links are
+ * listed as files and are not followed.
+ */
+@Slf4j
+@Getter
+public class FileTree {
+
+    private static final int THREADS_PER_CORE = 4;
+
+    private final Path root;
+    private final Set<Path> folders;
+    private final Set<Path> files;
+    private final Set<Path> unreadableFolders;
+
+    private FileTree(Path root, Set<Path> folders, Set<Path> files, Set<Path> unreadableFolders) {
+        this.root = root;
+        this.folders = folders;
+        this.files = files;
+        this.unreadableFolders = unreadableFolders;
+    }
+
+    /**
+     * Pool for {@link #walk(Path, IgnoreRules, ForkJoinPool)}, the caller owns it and shuts it down.
+     */
+    public static ForkJoinPool newWalkPool() {
+        return new ForkJoinPool(THREADS_PER_CORE * Runtime.getRuntime().availableProcessors(), pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("jinx-folder-walker-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Same as {@link #walk(Path, IgnoreRules, ForkJoinPool)} on a pool shut down after the walk.
+     */
+    public static FileTree walk(Path folderPath, IgnoreRules ignoreRules) {
+        final ForkJoinPool walkPool = newWalkPool();
+        try {
+            return walk(folderPath, ignoreRules, walkPool);
+        } finally {
+            walkPool.shutdown();
+        }
+    }
+
+    /**
+     * Lists the folder and all its subfolders and files in parallel, returns when the whole tree is listed.
+     *
+     * @param walkPool pool listing the folders, see {@link #newWalkPool}
+     * @throws RuntimeException if the path is a file
+     */
+    public static FileTree walk(Path folderPath, IgnoreRules ignoreRules, ForkJoinPool walkPool) {
+        if (Files.isRegularFile(folderPath)) {
+            throw new RuntimeException("Listing allowed from folders only");
+        }
+        final FileTree tree = new FileTree(folderPath, ConcurrentHashMap.newKeySet(), ConcurrentHashMap.newKeySet(),
+                ConcurrentHashMap.newKeySet());
+        walkPool.invoke(tree.new ListFolderTask(folderPath, ignoreRules));
+        if (!tree.unreadableFolders.isEmpty()) {
+            log.warn("{} folders of {} cannot be listed and are skipped", tree.unreadableFolders.size(), folderPath);
+        }
+        return tree;
+    }
+
+    /**
+     * Tree of a single file without folders.
+     */
+    public static FileTree ofFile(Path filePath) {
+        return new FileTree(filePath, Collections.emptySet(), Set.of(filePath), Collections.emptySet());
+    }
+
+    public boolean isFile() {
+        return folders.isEmpty() && files.size() == 1 && files.contains(root);
+    }
+
+    @SuppressWarnings("serial")
+    private class ListFolderTask extends RecursiveAction {
+        private final Path folder;
+        private final IgnoreRules ignoreRules;
+
+        private ListFolderTask(Path folder, IgnoreRules ignoreRules) {
+            this.folder = folder;
+            this.ignoreRules = ignoreRules;
+        }
+
+        @Override
+        protected void compute() {
+            final List<ListFolderTask> subfolderTasks = new ArrayList<>();
+            try (final DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+                folders.add(folder);
+                for (Path entry : entries) {
+                    final BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        log.debug("Attributes of {} cannot be read, it is skipped", entry, e);
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        if (!ignoreRules.isIgnored(entry, true)) {
+                            subfolderTasks.add(new ListFolderTask(entry, ignoreRules));
+                        }
+                    } else if (!ignoreRules.isIgnored(entry, false)) {
+                        files.add(entry);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                log.debug("Folder {} cannot be listed, it is skipped", folder, e);
+                unreadableFolders.add(folder);
+            }
+            invokeAll(subfolderTasks);
+        }
+    }
+}
@@ -4,15 +4,14 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
@@ -20,47 +19,26 @@ import java.util.regex.Pattern;
 @Slf4j
 public class FileUtils {
 
-    public static Set<Path> listFolders(Path folderPath) {
-        final Set<Path> paths = new HashSet<>();
+    private static final int LINE_SEARCH_BUFFER_SIZE = 64 * 1024;
 
-        final SimpleFileVisitor<Path> visitor = new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                paths.add(dir);
-                return super.preVisitDirectory(dir, attrs);
-            }
-        };
-        walkWithVisitor(folderPath, visitor);
-        return paths;
-    }
-
-    public static Set<Path> listFiles(Path folderPath, Set<String> ignoredNames) {
-        final Set<Path> paths = new HashSet<>();
-        final SimpleFileVisitor<Path> visitor = new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                if (!isIgnoredFile(file, ignoredNames)) {
-                    paths.add(file);
-                }
-                return super.visitFile(file, attrs);
-            }
-        };
-        walkWithVisitor(folderPath, visitor);
-        return paths;
+    /**
+     * Lists the folder and its subfolders, ignored subfolders are not visited at all.
+     *
+     * @see FileTree
+     */
+    public static Set<Path> listFolders(Path folderPath, IgnoreRules ignoreRules) {
+        return FileTree.walk(folderPath, ignoreRules).getFolders();
     }
 
-    private static void walkWithVisitor(Path folderPath, FileVisitor<Path> visitor) {
-        if (Files.isRegularFile(folderPath)) {
-            throw new RuntimeException("Listing allowed from folders only");
-        }
-        try {
-            Files.walkFileTree(folderPath, visitor);
-        } catch (IOException e) {
-            throw new RuntimeException("Directory parsing went wrong", e);
-        }
+    /**
+     * Lists files of the folder and its subfolders, ignored subfolders are not visited at all.
+     *
+     * @see FileTree
+     */
+    public static Set<Path> listFiles(Path folderPath, IgnoreRules ignoreRules) {
+        return FileTree.walk(folderPath, ignoreRules).getFiles();
     }
 
-
     public static void parseAndConsume(Path path, Consumer<String> stringConsumer, Charset charset, Pattern regEx) throws IOException {
         try (final BufferedReader reader = Files.newBufferedReader(path, charset)) {
             String line = reader.readLine();
@@ -73,9 +51,41 @@ public class FileUtils {
         }
     }
 
-    public static Boolean isIgnoredFile(Path file, Set<String> ignoredNames) {
-        return ignoredNames.contains(file.getFileName().toString());
+    /**
+     * Splits file into byte ranges of approximately {@code chunkSize} bytes, every range except the first one
+     * starts right after a line feed, so no line is divided between two ranges.
+     *
+     * @return ascending range bounds starting with 0 and ending with file size
+     */
+    public static long[] findLineAlignedChunks(FileChannel channel, long chunkSize) throws IOException {
+        final long size = channel.size();
+        final List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        final ByteBuffer buffer = ByteBuffer.allocate(LINE_SEARCH_BUFFER_SIZE);
+        long position = chunkSize;
+        while (position < size) {
+            long lineStart = size;
+            long searchPosition = position;
+            while (lineStart == size && searchPosition < size) {
+                buffer.clear();
+                final int read = channel.read(buffer, searchPosition);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lineStart = searchPosition + i + 1;
+                        break;
+                    }
+                }
+                searchPosition += read;
+            }
+            if (lineStart < size) {
+                bounds.add(lineStart);
+            }
+            position = Math.max(position, lineStart) + chunkSize;
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
     }
-
-
 }
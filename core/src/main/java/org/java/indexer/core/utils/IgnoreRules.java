@@ -0,0 +1,166 @@
+package org.java.indexer.core.utils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Gitignore-style rules of ignored files and folders compiled into a single matcher.
+ * <ul>
+ *     <li>{@code name} or glob like {@code *.log} matches files and folders with matching names at any depth</li>
+ *     <li>trailing slash like {@code node_modules/} matches folders only</li>
+ *     <li>pattern with slash like {@code src/generated} matches trailing path segments,
+ *     {@code **} matches any number of segments</li>
+ *     <li>pattern with leading slash like {@code /home/user/project/target} matches absolute path</li>
+ *     <li>{@code !pattern} includes back paths ignored by previous rules, blank lines and lines
+ *     starting with {@code #} are skipped</li>
+ * </ul>
+ * Content of an ignored folder is ignored as well, so walkers and watchers skip the whole subtree.
+ * Plain names without negations are matched by a single hash lookup.
+ */
+public class IgnoreRules {
+
+    public static final IgnoreRules NONE = compile(null);
+
+    private final Set<String> ignoredNames = new HashSet<>();
+    private final Set<String> ignoredFolderNames = new HashSet<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private final boolean pathRules;
+
+    private IgnoreRules(Collection<String> patterns) {
+        final boolean negations = patterns.stream().anyMatch(pattern -> pattern.startsWith("!"));
+        boolean hasPathRules = false;
+        for (String line : patterns) {
+            final String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            final Rule rule = Rule.of(pattern);
+            if (!negations && rule.literalName != null) {
+                (rule.folderOnly ? ignoredFolderNames : ignoredNames).add(rule.literalName);
+            } else {
+                rules.add(rule);
+                hasPathRules |= rule.pathPattern;
+            }
+        }
+        this.pathRules = hasPathRules;
+    }
+
+    /**
+     * @param patterns gitignore-style patterns, might be null or empty
+     */
+    public static IgnoreRules compile(Collection<String> patterns) {
+        return new IgnoreRules(patterns == null ? List.of() : patterns);
+    }
+
+    /**
+     * Checks the path itself, its parent folders are not checked.
+     */
+    public boolean isIgnored(Path path, boolean folder) {
+        final Path fileName = path.getFileName();
+        if (fileName == null) {
+            return false;
+        }
+        final String name = fileName.toString();
+        if (ignoredNames.contains(name) || (folder && ignoredFolderNames.contains(name))) {
+            return true;
+        }
+        final String fullPath = pathRules ? path.toString().replace(path.getFileSystem().getSeparator(), "/") : null;
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            final Rule rule = rules.get(i);
+            if (rule.matches(name, fullPath, folder)) {
+                return !rule.negated;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the file and all its parent folders below the root, e.g. entries of archives.
+     */
+    public boolean isIgnoredBelow(Path root, Path file) {
+        if (isIgnored(file, false)) {
+            return true;
+        }
+        for (Path folder = file.getParent(); folder != null && folder.startsWith(root) && !folder.equals(root);
+             folder = folder.getParent()) {
+            if (isIgnored(folder, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Rule {
+        private final boolean negated;
+        private final boolean folderOnly;
+        private final boolean pathPattern;
+        private final String literalName;
+        private final Pattern regEx;
+
+        private Rule(boolean negated, boolean folderOnly, boolean pathPattern, String literalName, Pattern regEx) {
+            this.negated = negated;
+            this.folderOnly = folderOnly;
+            this.pathPattern = pathPattern;
+            this.literalName = literalName;
+            this.regEx = regEx;
+        }
+
+        private static Rule of(String pattern) {
+            final boolean negated = pattern.startsWith("!");
+            String glob = negated ? pattern.substring(1) : pattern;
+            final boolean folderOnly = glob.endsWith("/");
+            if (folderOnly) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            final boolean pathPattern = glob.contains("/");
+            if (!pathPattern && !glob.matches(".*[*?\\[].*")) {
+                return new Rule(negated, folderOnly, false, glob, null);
+            }
+            final String regEx = !pathPattern ? toRegEx(glob)
+                    : glob.startsWith("/") ? toRegEx(glob)
+                    : "(?:.*/)?" + toRegEx(glob);
+            return new Rule(negated, folderOnly, pathPattern, null, Pattern.compile(regEx));
+        }
+
+        private boolean matches(String name, String fullPath, boolean folder) {
+            if (folderOnly && !folder) {
+                return false;
+            }
+            if (literalName != null) {
+                return literalName.equals(name);
+            }
+            return regEx.matcher(pathPattern ? fullPath : name).matches();
+        }
+
+        private static String toRegEx(String glob) {
+            final StringBuilder regEx = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                final char c = glob.charAt(i);
+                if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    final boolean folders = i + 2 < glob.length() && glob.charAt(i + 2) == '/';
+                    regEx.append(folders ? "(?:.*/)?" : ".*");
+                    i += folders ? 2 : 1;
+                } else if (c == '*') {
+                    regEx.append("[^/]*");
+                } else if (c == '?') {
+                    regEx.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                    final int end = glob.indexOf(']', i + 1);
+                    final String range = glob.substring(i + 1, end);
+                    regEx.append('[')
+                            .append(range.startsWith("!") ? "^" + range.substring(1) : range)
+                            .append(']');
+                    i = end;
+                } else {
+                    regEx.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regEx.toString();
+        }
+    }
+}
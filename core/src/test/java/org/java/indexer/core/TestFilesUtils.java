@@ -3,10 +3,15 @@ package org.java.indexer.core;
 import lombok.SneakyThrows;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class TestFilesUtils {
 
@@ -39,6 +44,18 @@ public class TestFilesUtils {
         return newFile;
     }
 
+    @SneakyThrows
+    public static File createZip(String path, Map<String, String> entries) {
+        try (final ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(path))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+                zipOutputStream.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zipOutputStream.closeEntry();
+            }
+        }
+        return new File(path);
+    }
+
     @SneakyThrows
     public static String readContent(String filePath) {
         return Files.readString(Paths.get(filePath));
@@ -66,4 +83,9 @@ public class TestFilesUtils {
         return new File(newTarget.toUri());
     }
 
+    @SneakyThrows
+    public static File rename(String path, String newPath) {
+        return Files.move(Path.of(path), Path.of(newPath)).toFile();
+    }
+
 }
@@ -0,0 +1,138 @@
+package org.java.indexer.core.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ContentRegistryTest {
+
+    private final ContentRegistry registry = new ContentRegistry(new OnHeapTokenStorage());
+
+    @Test
+    public void sharedContentIsFreedWithLastReference() {
+        //given
+        final ContentFingerprint fingerprint = ContentFingerprint.of(new byte[]{1, 2, 3});
+        final AtomicInteger tokenizations = new AtomicInteger();
+        final Map<String, Integer> first = registry.acquire(fingerprint, () -> {
+            tokenizations.incrementAndGet();
+            return Map.of("token", 2);
+        });
+        final Map<String, Integer> copy = registry.acquire(fingerprint, () -> {
+            tokenizations.incrementAndGet();
+            return Map.of("token", 2);
+        });
+
+        //when
+        registry.release(new IndexedFile(UUID.randomUUID(), Path.of("first"), first, fingerprint));
+
+        //then
+        assertSame(first, copy);
+        assertEquals(1, tokenizations.get());
+        assertEquals(1, registry.size());
+        assertEquals(1, registry.getTermDictionary().documentFrequency("token"));
+
+        //when
+        registry.release(new IndexedFile(UUID.randomUUID(), Path.of("copy"), copy, fingerprint));
+
+        //then
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.getTermDictionary().documentFrequency("token"));
+    }
+
+    @Test
+    public void retainedContentOutlivesItsFiles() {
+        //given
+        final ContentFingerprint fingerprint = ContentFingerprint.of(new byte[]{1, 2, 3});
+        final Map<String, Integer> tokens = registry.acquire(fingerprint, () -> Map.of("token", 1));
+        registry.retain(fingerprint);
+        registry.release(new IndexedFile(UUID.randomUUID(), Path.of("deleted"), tokens, fingerprint));
+
+        //when
+        final Map<String, Integer> reused = registry.acquire(fingerprint, () -> Map.of("token", 1));
+
+        //then
+        assertSame(tokens, reused);
+        assertEquals(1, registry.getTermDictionary().documentFrequency("token"));
+
+        //when
+        registry.releaseRetained(fingerprint);
+        registry.release(new IndexedFile(UUID.randomUUID(), Path.of("moved"), reused, fingerprint));
+
+        //then
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.getTermDictionary().documentFrequency("token"));
+    }
+
+    @Test
+    public void batchesAreRegisteredAtOnce() {
+        //given
+        final ContentFingerprint registeredFingerprint = ContentFingerprint.of(new byte[]{1});
+        final ContentFingerprint batchFingerprint = ContentFingerprint.of(new byte[]{2});
+        final Map<String, Integer> registered = registry.acquire(registeredFingerprint, () -> Map.of("token", 1));
+        final ContentBatch first = new ContentBatch(registry);
+        final ContentBatch second = new ContentBatch(registry);
+        final Map<String, Integer> firstReused = first.acquire(registeredFingerprint, () -> Map.of("token", 1));
+        final Map<String, Integer> firstTokens = first.acquire(batchFingerprint, () -> Map.of("token", 2, "batch", 1));
+        final Map<String, Integer> firstCopy = first.acquire(batchFingerprint, () -> Map.of("token", 2, "batch", 1));
+        final Map<String, Integer> secondTokens = second.acquire(batchFingerprint, () -> Map.of("token", 2, "batch", 1));
+        final int termsBeforeRegistration = registry.getTermDictionary().documentFrequency("token");
+
+        //when
+        final Map<Map<String, Integer>, Map<String, Integer>> replacements = registry.register(List.of(first, second));
+
+        //then
+        assertSame(registered, firstReused);
+        assertSame(firstTokens, firstCopy);
+        assertEquals(1, termsBeforeRegistration);
+        assertEquals(1, replacements.size());
+        assertSame(firstTokens, replacements.get(secondTokens));
+        assertEquals(2, registry.size());
+        assertEquals(new TermStatistics("token", 5, 8), registry.getTermDictionary().statistics("token"));
+        assertEquals(new TermStatistics("batch", 3, 3), registry.getTermDictionary().statistics("batch"));
+
+        //when
+        registry.release(new IndexedFile(UUID.randomUUID(), Path.of("registered"), registered, registeredFingerprint));
+        registry.release(new IndexedFile(UUID.randomUUID(), Path.of("reused"), firstReused, registeredFingerprint));
+        for (String path : List.of("first", "copy", "second")) {
+            registry.release(new IndexedFile(UUID.randomUUID(), Path.of(path), firstTokens, batchFingerprint));
+        }
+
+        //then
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.getTermDictionary().size());
+    }
+
+    @Test
+    public void discardedBatchReleasesItsContentsWhenFinished() {
+        //given
+        final ContentFingerprint registeredFingerprint = ContentFingerprint.of(new byte[]{1});
+        final ContentFingerprint batchFingerprint = ContentFingerprint.of(new byte[]{2});
+        final Map<String, Integer> registered = registry.acquire(registeredFingerprint, () -> Map.of("token", 1));
+        final ContentBatch batch = new ContentBatch(registry);
+        batch.acquire(registeredFingerprint, () -> Map.of("token", 1));
+        batch.acquire(registeredFingerprint, () -> Map.of("token", 1));
+        batch.acquire(batchFingerprint, () -> Map.of("batch", 1));
+        batch.acquire(null, () -> Map.of("unshared", 1));
+
+        //when
+        batch.discard();
+
+        //then
+        assertEquals(1, registry.size());
+
+        //when
+        batch.finish();
+        registry.release(new IndexedFile(UUID.randomUUID(), Path.of("registered"), registered, registeredFingerprint));
+
+        //then
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.getTermDictionary().size());
+    }
+}
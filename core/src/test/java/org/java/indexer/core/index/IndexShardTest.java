@@ -0,0 +1,140 @@
+package org.java.indexer.core.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexShardTest {
+
+    private final IndexShard shard = new IndexShard(new ContentRegistry(new OnHeapTokenStorage()),
+            IndexSettings.builder().flushThreshold(2).maxSegments(2).mergeFactor(2).build(),
+            Runnable::run);
+
+    @Test
+    public void queryOverBufferAndMergedSegments() {
+        //given
+        for (int i = 0; i < 10; i++) {
+            shard.put(file("/folder/file" + i, Map.of("token", i + 1)));
+        }
+
+        //when
+        final Map<String, Integer> result = shard.query("token");
+
+        //then
+        assertEquals(10, result.size());
+        assertEquals(10, result.get("/folder/file9"));
+    }
+
+    @Test
+    public void booleanQueryOverDenseAndSparsePostings() {
+        //given
+        for (int i = 0; i < 100; i++) {
+            shard.put(file("/folder/file" + i, i % 10 == 0 ? Map.of("common", 1, "rare", 2) : Map.of("common", 1)));
+        }
+        shard.remove(Paths.get("/folder/file10"));
+
+        //when
+        final Map<String, Integer> all = shard.query(List.of("common", "rare"), BooleanOperator.AND, QueryDeadline.after(null));
+        final Map<String, Integer> any = shard.query(List.of("common", "rare"), BooleanOperator.OR, QueryDeadline.after(null));
+
+        //then
+        assertEquals(9, all.size());
+        assertEquals(3, all.get("/folder/file90"));
+        assertEquals(99, any.size());
+        assertEquals(1, any.get("/folder/file1"));
+    }
+
+    @Test
+    public void expiredDeadlineStopsQuery() {
+        //given
+        for (int i = 0; i < 10; i++) {
+            shard.put(file("/folder/file" + i, Map.of("token", 1)));
+        }
+        final QueryDeadline deadline = QueryDeadline.after(Duration.ZERO);
+
+        //when
+        final Map<String, Integer> result = shard.query(List.of("token"), BooleanOperator.OR, deadline);
+
+        //then
+        assertTrue(result.isEmpty());
+        assertTrue(deadline.isPartial());
+    }
+
+    @Test
+    public void queryWithoutSkippedWorkIsNotPartial() {
+        //given
+        final QueryDeadline deadline = QueryDeadline.after(Duration.ZERO);
+
+        //when
+        final Map<String, Integer> result = shard.query(List.of("token"), BooleanOperator.OR, deadline);
+
+        //then
+        assertTrue(result.isEmpty());
+        assertTrue(deadline.isExpired());
+        assertFalse(deadline.isPartial());
+    }
+
+    @Test
+    public void replacedAndRemovedFilesAreNotFound() {
+        //given
+        for (int i = 0; i < 10; i++) {
+            shard.put(file("/folder/file" + i, Map.of("token", 1)));
+        }
+
+        //when
+        shard.put(file("/folder/file0", Map.of("other", 1)));
+        shard.remove(Paths.get("/folder/file1"));
+        shard.removeFolder(Paths.get("/folder"));
+        shard.put(file("/folder/file2", Map.of("token", 5)));
+
+        //then
+        assertEquals(Map.of("/folder/file2", 5), shard.query("token"));
+        assertNull(shard.get(Paths.get("/folder/file0")));
+    }
+
+    @Test
+    public void filesOfFailedFlushStayInBuffer() {
+        //given
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        final Map<String, Integer> failingTokens = new HashMap<>(Map.of("token", 1)) {
+            @Override
+            public void forEach(BiConsumer<? super String, ? super Integer> action) {
+                if (failing.getAndSet(false)) {
+                    throw new IllegalStateException("Tokens cannot be read");
+                }
+                super.forEach(action);
+            }
+        };
+
+        //when
+        shard.put(file("/folder/failing", failingTokens));
+        shard.put(file("/folder/file1", Map.of("token", 1)));
+        final Map<String, Integer> afterFailure = shard.query("token");
+        shard.put(file("/folder/file2", Map.of("token", 1)));
+        shard.put(file("/folder/file3", Map.of("token", 1)));
+
+        //then
+        assertEquals(Set.of("/folder/failing", "/folder/file1"), afterFailure.keySet());
+        assertEquals(Set.of("/folder/failing", "/folder/file1", "/folder/file2", "/folder/file3"),
+                shard.query("token").keySet());
+    }
+
+    private static IndexedFile file(String path, Map<String, Integer> tokens) {
+        final Path filePath = Paths.get(path);
+        return new IndexedFile(UUID.randomUUID(), filePath, tokens);
+    }
+}
@@ -0,0 +1,153 @@
+package org.java.indexer.core.index;
+
+import lombok.SneakyThrows;
+import org.java.indexer.core.tokenizer.RegexTokenizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexShardingTest {
+
+    private static final int SHARDS = 4;
+
+    private final Index index = new Index(List.of(), new RegexTokenizer(), IndexSettings.builder()
+            .shards(SHARDS)
+            .flushThreshold(3)
+            .build());
+
+    @AfterEach
+    public void afterEach() {
+        index.close();
+    }
+
+    @Test
+    @SneakyThrows
+    public void samePathIsRoutedToSameShard(@TempDir Path folder) {
+        //given
+        final Path file = Files.writeString(folder.resolve("file.txt"), "before before");
+        index.addFile(file);
+
+        //when
+        Files.writeString(file, "after");
+        index.addFile(Path.of(file.toString()));
+
+        //then
+        assertEquals(index.shardNumber(file), index.shardNumber(Path.of(file.toString())));
+        assertEquals(Map.of(), index.queryToken("before").getOccurrences());
+        assertEquals(Map.of(file.toString(), 1), index.queryToken("after").getOccurrences());
+        assertEquals(new TermStatistics("after", 1, 1), index.termStatistics("after"));
+        assertEquals(0, index.termStatistics("before").getDocumentFrequency());
+    }
+
+    @Test
+    @SneakyThrows
+    public void queriesMergeFilesOfAllShards(@TempDir Path folder) {
+        //given
+        final Map<String, Integer> expected = new HashMap<>();
+        final Map<String, Integer> expectedEven = new HashMap<>();
+        final Set<Integer> usedShards = new HashSet<>();
+        for (int i = 0; i < 40; i++) {
+            final Path file = Files.writeString(folder.resolve("file" + i + ".txt"),
+                    "common ".repeat(i + 1) + (i % 2 == 0 ? "even" : "odd") + " unique" + i);
+            index.addFile(file);
+            usedShards.add(index.shardNumber(file));
+            expected.put(file.toString(), i + 1);
+            if (i % 2 == 0) {
+                expectedEven.put(file.toString(), i + 2);
+            }
+        }
+
+        //when
+        final QueryResult common = index.queryToken("common");
+        final QueryResult commonAndEven = index.queryBoolean(List.of("common", "even"), BooleanOperator.AND, null);
+
+        //then
+        assertEquals(SHARDS, usedShards.size());
+        assertEquals(expected, common.getOccurrences());
+        assertEquals(expectedEven, commonAndEven.getOccurrences());
+        assertEquals(new TermStatistics("common", 40, 820), index.termStatistics("common"));
+        assertEquals(List.of(new TermStatistics("common", 40, 820)), index.topTokens(1));
+    }
+
+    @Test
+    @SneakyThrows
+    public void removedFilesAreAddedBackToTheirShards(@TempDir Path folder) {
+        //given
+        final Path subfolder = Files.createDirectory(folder.resolve("subfolder"));
+        final Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 12; i++) {
+            final Path file = Files.writeString((i < 6 ? folder : subfolder).resolve("file" + i + ".txt"), "removable");
+            index.addFile(file);
+            expected.put(file.toString(), 2);
+        }
+
+        //when
+        for (int i = 0; i < 6; i++) {
+            index.removeFile(folder.resolve("file" + i + ".txt"));
+        }
+        index.removeFolder(subfolder);
+        final QueryResult removed = index.queryToken("removable");
+        final int removedFrequency = index.termStatistics("removable").getDocumentFrequency();
+        for (int i = 0; i < 12; i++) {
+            final Path file = Files.writeString((i < 6 ? folder : subfolder).resolve("file" + i + ".txt"), "removable removable");
+            index.addFile(file);
+        }
+
+        //then
+        assertTrue(removed.getOccurrences().isEmpty());
+        assertEquals(0, removedFrequency);
+        assertEquals(new TermStatistics("removable", 12, 24), index.termStatistics("removable"));
+        assertEquals(expected, index.queryToken("removable").getOccurrences());
+    }
+
+    @Test
+    @SneakyThrows
+    public void detachedFolderIsAttachedUnderNewPathWithoutTokenization(@TempDir Path folder) {
+        //given
+        final AtomicInteger tokenizations = new AtomicInteger();
+        final RegexTokenizer regexTokenizer = new RegexTokenizer();
+        final Index countingIndex = new Index(List.of(), path -> {
+            tokenizations.incrementAndGet();
+            return regexTokenizer.tokenize(path);
+        }, IndexSettings.builder().shards(SHARDS).build());
+        final Path before = Files.createDirectory(folder.resolve("before"));
+        for (int i = 0; i < 5; i++) {
+            countingIndex.addFile(Files.writeString(before.resolve("file" + i + ".txt"), "detached file" + i));
+        }
+
+        //when
+        final DetachedFolder detached = countingIndex.detachFolder(before);
+
+        //then
+        assertTrue(countingIndex.queryToken("detached").getOccurrences().isEmpty());
+        assertEquals(0, countingIndex.termStatistics("detached").getDocumentFrequency());
+
+        //when
+        final Path after = Files.move(before, folder.resolve("after"));
+        final int attached = countingIndex.attachFolder(detached, after);
+        countingIndex.releaseDetached(detached);
+
+        //then
+        final Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            expected.add(after.resolve("file" + i + ".txt").toString());
+        }
+        assertEquals(5, attached);
+        assertEquals(5, tokenizations.get());
+        assertEquals(expected, countingIndex.queryToken("detached").getOccurrences().keySet());
+        assertEquals(new TermStatistics("detached", 5, 5), countingIndex.termStatistics("detached"));
+        countingIndex.close();
+    }
+}
@@ -0,0 +1,206 @@
+package org.java.indexer.core.index;
+
+import lombok.SneakyThrows;
+import org.java.indexer.core.tokenizer.RegexTokenizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.java.indexer.core.TestFilesUtils.createZip;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexSnapshotTest {
+
+    private static final String SEPARATOR = FileSystems.getDefault().getSeparator();
+
+    @Test
+    @SneakyThrows
+    public void exportedSnapshotImportsIntoEqualIndex() {
+        //given
+        final Path outerFile = Paths.get(IndexSnapshotTest.class.getResource(SEPARATOR + "jinx" + SEPARATOR + "abl.bla").toURI());
+        final Path innerFile = Paths.get(IndexSnapshotTest.class.getResource(SEPARATOR + "jinx" + SEPARATOR + "inner" + SEPARATOR + "bla.bla").toURI());
+        final Index index = new Index(List.of(), new RegexTokenizer(), IndexSettings.DEFAULT);
+        index.addFile(outerFile);
+        index.addFile(innerFile);
+        final Path snapshot = Files.createTempFile("jinx", ".snapshot");
+
+        //when
+        index.exportSnapshot(snapshot);
+        final Index importedIndex = new Index(List.of(), new RegexTokenizer(), IndexSettings.builder()
+                .shards(4)
+                .build());
+        importedIndex.importSnapshot(snapshot);
+
+        //then
+        for (String token : List.of("dependency", "logback", "classic1", "missing")) {
+            assertEquals(index.queryToken(token), importedIndex.queryToken(token));
+        }
+        Files.delete(snapshot);
+    }
+
+    @Test
+    @SneakyThrows
+    public void queriesSeeEitherPreviousOrImportedState(@TempDir Path folder) {
+        //given
+        final Path smallSnapshot = snapshotOfFiles(folder.resolve("small"), 20);
+        final Path largeSnapshot = snapshotOfFiles(folder.resolve("large"), 30);
+        final Index index = new Index(List.of(), new RegexTokenizer(), IndexSettings.builder().shards(4).build());
+        index.importSnapshot(smallSnapshot);
+        final Set<Integer> observedSizes = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean importing = new AtomicBoolean(true);
+        final CompletableFuture<Void> queries = CompletableFuture.runAsync(() -> {
+            while (importing.get()) {
+                observedSizes.add(index.queryToken("shared").getOccurrences().size());
+            }
+        });
+
+        //when
+        try {
+            for (int i = 0; i < 20; i++) {
+                index.importSnapshot(i % 2 == 0 ? largeSnapshot : smallSnapshot);
+            }
+        } finally {
+            importing.set(false);
+        }
+        queries.join();
+
+        //then
+        assertTrue(Set.of(20, 30).containsAll(observedSizes), "Observed sizes " + observedSizes);
+        assertEquals(20, index.queryToken("shared").getOccurrences().size());
+        assertEquals(new TermStatistics("shared", 20, 20), index.termStatistics("shared"));
+        index.close();
+    }
+
+    @Test
+    @SneakyThrows
+    public void unreadableSnapshotKeepsIndexState(@TempDir Path folder) {
+        //given
+        final Path snapshot = snapshotOfFiles(folder.resolve("files"), 5);
+        final Index index = new Index(List.of(), new RegexTokenizer(), IndexSettings.DEFAULT);
+        index.importSnapshot(snapshot);
+        final QueryResult expected = index.queryToken("shared");
+        final byte[] content = Files.readAllBytes(snapshot);
+        final Path truncatedSnapshot = Files.write(folder.resolve("truncated.snapshot"), Arrays.copyOf(content, content.length - 3));
+
+        //when
+        assertThrows(IOException.class, () -> index.importSnapshot(truncatedSnapshot));
+
+        //then
+        assertEquals(expected, index.queryToken("shared"));
+        assertEquals(new TermStatistics("shared", 5, 5), index.termStatistics("shared"));
+        index.close();
+    }
+
+    @Test
+    @SneakyThrows
+    public void archiveEntriesAreRestoredFromSnapshot(@TempDir Path folder) {
+        //given
+        final Path archive = folder.resolve("archive.zip");
+        createZip(archive.toString(), Map.of("dir/first.txt", "archived first", "second.txt", "archived second"));
+        final Index index = new Index(List.of(), new RegexTokenizer(), IndexSettings.DEFAULT);
+        index.addFile(archive);
+        final Path snapshot = folder.resolve("archive.snapshot");
+        index.exportSnapshot(snapshot);
+        final Index importedIndex = new Index(List.of(), new RegexTokenizer(), IndexSettings.DEFAULT);
+        importedIndex.importSnapshot(snapshot);
+        final QueryResult imported = importedIndex.queryToken("archived");
+
+        //when
+        importedIndex.removeFile(archive);
+
+        //then
+        assertEquals(index.queryToken("archived"), imported);
+        assertEquals(2, imported.getOccurrences().size());
+        assertTrue(importedIndex.queryToken("archived").getOccurrences().isEmpty());
+        index.close();
+        importedIndex.close();
+    }
+
+    @Test
+    @SneakyThrows
+    public void failedExportKeepsPreviousSnapshot(@TempDir Path folder) {
+        //given
+        final Path snapshot = snapshotOfFiles(folder.resolve("files"), 5);
+        final byte[] previous = Files.readAllBytes(snapshot);
+        final Map<Path, Map<Path, ContentFingerprint>> failingArchives = new AbstractMap<>() {
+            @Override
+            public int size() {
+                return 1;
+            }
+
+            @Override
+            public Set<Entry<Path, Map<Path, ContentFingerprint>>> entrySet() {
+                throw new IllegalStateException("Archives cannot be written");
+            }
+        };
+
+        //when
+        assertThrows(IllegalStateException.class, () -> IndexSnapshot.write(snapshot, List.of(), failingArchives));
+
+        //then
+        assertArrayEquals(previous, Files.readAllBytes(snapshot));
+        try (Stream<Path> files = Files.list(snapshot.getParent())) {
+            assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void contentIdsOutOfBoundsAreRejected(@TempDir Path folder) {
+        //given
+        final Path snapshot = folder.resolve("file.snapshot");
+        final byte[] path = "file".getBytes(UTF_8);
+        IndexSnapshot.write(snapshot, List.of(new IndexedFile(UUID.randomUUID(), Path.of("file"), Map.of("token", 1), null)), Map.of());
+        final byte[] content = Files.readAllBytes(snapshot);
+        final int fileContentId = 4 + 1 + 1 + 1 + path.length;
+        final int postingContentId = content.length - 2;
+        assertEquals(0, content[fileContentId]);
+        assertEquals(0, content[postingContentId]);
+        final byte[] corruptFile = content.clone();
+        corruptFile[fileContentId] = 5;
+        final byte[] corruptPosting = content.clone();
+        corruptPosting[postingContentId] = 3;
+
+        //when
+        final IOException fileError = assertThrows(IOException.class,
+                () -> IndexSnapshot.read(Files.write(folder.resolve("file.corrupt"), corruptFile)));
+        final IOException postingError = assertThrows(IOException.class,
+                () -> IndexSnapshot.read(Files.write(folder.resolve("posting.corrupt"), corruptPosting)));
+
+        //then
+        assertTrue(fileError.getMessage().startsWith("Corrupt snapshot"));
+        assertTrue(postingError.getMessage().startsWith("Corrupt snapshot"));
+    }
+
+    @SneakyThrows
+    private static Path snapshotOfFiles(Path folder, int filesCount) {
+        Files.createDirectories(folder);
+        final Index index = new Index(List.of(), new RegexTokenizer(), IndexSettings.builder().shards(4).build());
+        for (int i = 0; i < filesCount; i++) {
+            index.addFile(Files.writeString(folder.resolve("file" + i + ".txt"), "shared unique" + i));
+        }
+        final Path snapshot = folder.resolve("files.snapshot");
+        index.exportSnapshot(snapshot);
+        index.close();
+        return snapshot;
+    }
+}
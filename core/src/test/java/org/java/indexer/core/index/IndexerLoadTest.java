@@ -0,0 +1,239 @@
+package org.java.indexer.core.index;
+
+import lombok.SneakyThrows;
+import org.java.indexer.core.Indexer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Load harness measuring time from a file change until queries see it. Files are created, modified and deleted
+ * and folders are moved at the target rate in a temporary tree watched by a live {@link Indexer}. Every change
+ * writes a unique token, a checker thread queries pending tokens until they are found exactly in the expected files.
+ * <p>Disabled by default, to run it:
+ * <pre>
+ * mvn test -Dtest=IndexerLoadTest -Djinx.load.enabled=true -Djinx.load.rate=50 -Djinx.load.seconds=60
+ * </pre>
+ * Other properties: {@code jinx.load.folders}, {@code jinx.load.filesPerFolder}, {@code jinx.load.timeoutSeconds}
+ * and {@code jinx.load.seed}, the same seed gives the same sequence of changes.
+ */
+@EnabledIfSystemProperty(named = "jinx.load.enabled", matches = "true")
+class IndexerLoadTest {
+
+    private static final int RATE = Integer.getInteger("jinx.load.rate", 20);
+    private static final int SECONDS = Integer.getInteger("jinx.load.seconds", 30);
+    private static final int FOLDERS = Integer.getInteger("jinx.load.folders", 10);
+    private static final int FILES_PER_FOLDER = Integer.getInteger("jinx.load.filesPerFolder", 10);
+    private static final int TIMEOUT_SECONDS = Integer.getInteger("jinx.load.timeoutSeconds", 30);
+    private static final long SEED = Long.getLong("jinx.load.seed", 42);
+
+    private enum Operation {CREATE, MODIFY, DELETE, MOVE_FOLDER}
+
+    @TempDir
+    Path root;
+
+    private final Random random = new Random(SEED);
+    private final Map<Path, String> fileTokens = new HashMap<>();
+    private final List<Path> folders = new ArrayList<>();
+    private final Map<Operation, Integer> operations = new EnumMap<>(Operation.class);
+    private final Map<String, Expectation> pending = new ConcurrentHashMap<>();
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger missed = new AtomicInteger();
+    private final AtomicInteger duplicates = new AtomicInteger();
+    private int nameCounter;
+
+    @Test
+    @SneakyThrows
+    public void fileChangesBecomeQueryable() {
+        //given
+        for (int i = 0; i < FOLDERS; i++) {
+            final Path folder = Files.createDirectory(root.resolve("folder" + nameCounter++));
+            folders.add(folder);
+            for (int j = 0; j < FILES_PER_FOLDER; j++) {
+                final Path file = folder.resolve("file" + nameCounter++ + ".txt");
+                final String token = newToken();
+                Files.writeString(file, token);
+                fileTokens.put(file, token);
+            }
+        }
+
+        try (Indexer indexer = new Indexer()) {
+            indexer.index(List.of(root.toString())).getCompletion().join();
+            final Thread checker = new Thread(() -> checkExpectations(indexer), "jinx-load-checker");
+            checker.start();
+
+            //when
+            final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+            final long started = System.nanoTime();
+            for (long operation = 0; System.nanoTime() - started < TimeUnit.SECONDS.toNanos(SECONDS); operation++) {
+                LockSupport.parkNanos(started + operation * intervalNanos - System.nanoTime());
+                performRandomOperation();
+            }
+            final long loadNanos = System.nanoTime() - started;
+            final long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (!pending.isEmpty() && System.nanoTime() < drainDeadline) {
+                Thread.sleep(10);
+            }
+            checker.interrupt();
+            checker.join();
+            pending.values().forEach(expectation -> expectation.expire(indexer));
+            report(loadNanos);
+        }
+
+        //then
+        assertEquals(0, missed.get(), "Missed updates");
+        assertEquals(0, duplicates.get(), "Duplicate updates");
+    }
+
+    @SneakyThrows
+    private void performRandomOperation() {
+        final int choice = random.nextInt(100);
+        final Operation operation = fileTokens.isEmpty() || choice < 30 ? Operation.CREATE
+                : choice < 70 ? Operation.MODIFY
+                : choice < 90 ? Operation.DELETE
+                : Operation.MOVE_FOLDER;
+        operations.merge(operation, 1, Integer::sum);
+        switch (operation) {
+            case CREATE: {
+                final Path file = folders.get(random.nextInt(folders.size())).resolve("file" + nameCounter++ + ".txt");
+                final String token = newToken();
+                Files.writeString(file, token);
+                fileTokens.put(file, token);
+                expect(token, Set.of(file));
+                break;
+            }
+            case MODIFY: {
+                final Path file = randomFile();
+                final String token = newToken();
+                Files.writeString(file, token);
+                expect(fileTokens.put(file, token), Set.of());
+                expect(token, Set.of(file));
+                break;
+            }
+            case DELETE: {
+                final Path file = randomFile();
+                Files.delete(file);
+                expect(fileTokens.remove(file), Set.of());
+                break;
+            }
+            case MOVE_FOLDER: {
+                final int folderIndex = random.nextInt(folders.size());
+                final Path folder = folders.get(folderIndex);
+                final Path movedFolder = Files.move(folder, root.resolve("folder" + nameCounter++));
+                folders.set(folderIndex, movedFolder);
+                final List<Path> movedFiles = fileTokens.keySet().stream()
+                        .filter(file -> file.startsWith(folder))
+                        .collect(Collectors.toList());
+                for (Path file : movedFiles) {
+                    final Path movedFile = movedFolder.resolve(folder.relativize(file));
+                    final String token = fileTokens.remove(file);
+                    fileTokens.put(movedFile, token);
+                    expect(token, Set.of(movedFile));
+                }
+                break;
+            }
+        }
+    }
+
+    private void checkExpectations(Indexer indexer) {
+        while (!Thread.currentThread().isInterrupted()) {
+            pending.values().forEach(expectation -> expectation.check(indexer));
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+    }
+
+    private void report(long loadNanos) {
+        final List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        final double loadSeconds = loadNanos / 1e9;
+        final int operationsCount = operations.values().stream().mapToInt(Integer::intValue).sum();
+        System.out.printf("Operations: %s in %.1f s, %.1f ops/s%n", operations, loadSeconds, operationsCount / loadSeconds);
+        System.out.printf("Queryable updates: %d, %.1f updates/s%n", sorted.size(), sorted.size() / loadSeconds);
+        System.out.printf("Write to queryable latency, ms: p50 %d, p90 %d, p99 %d, max %d%n",
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 1));
+        System.out.printf("Missed updates: %d, duplicate updates: %d%n", missed.get(), duplicates.get());
+    }
+
+    private static long percentile(List<Long> sorted, double quantile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        final int index = Math.max(0, (int) Math.ceil(quantile * sorted.size()) - 1);
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(index));
+    }
+
+    private void expect(String token, Set<Path> files) {
+        pending.put(token, new Expectation(token, files.stream().map(Path::toString).collect(Collectors.toSet())));
+    }
+
+    private Path randomFile() {
+        final List<Path> files = new ArrayList<>(fileTokens.keySet());
+        return files.get(random.nextInt(files.size()));
+    }
+
+    private String newToken() {
+        return "loadtoken" + nameCounter++;
+    }
+
+    /**
+     * Token expected to be found exactly in the given files, no files means the token should disappear.
+     */
+    private class Expectation {
+        private final String token;
+        private final Set<String> files;
+        private final long written = System.nanoTime();
+
+        private Expectation(String token, Set<String> files) {
+            this.token = token;
+            this.files = files;
+        }
+
+        private void check(Indexer indexer) {
+            final Set<String> found = indexer.queryToken(token).getOccurrences().keySet();
+            if (found.equals(files)) {
+                if (pending.remove(token, this)) {
+                    latencies.add(System.nanoTime() - written);
+                }
+            } else if (System.nanoTime() - written > TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS)) {
+                expire(indexer);
+            }
+        }
+
+        /**
+         * Counts the update as missed if some expected files are not found or as duplicate if unexpected files are.
+         */
+        private void expire(Indexer indexer) {
+            if (!pending.remove(token, this)) {
+                return;
+            }
+            final Set<String> found = indexer.queryToken(token).getOccurrences().keySet();
+            if (found.equals(files)) {
+                latencies.add(System.nanoTime() - written);
+            } else if (!found.containsAll(files)) {
+                missed.incrementAndGet();
+                System.out.printf("Missed update: token %s expected in %s, found in %s%n", token, files, found);
+            } else if (!files.containsAll(found)) {
+                duplicates.incrementAndGet();
+                System.out.printf("Duplicate update: token %s expected in %s, found in %s%n", token, files, found);
+            }
+        }
+    }
+}
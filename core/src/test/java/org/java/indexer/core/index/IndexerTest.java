@@ -3,25 +3,52 @@ package org.java.indexer.core.index;
 import lombok.SneakyThrows;
 import org.awaitility.Awaitility;
 import org.java.indexer.core.Indexer;
+import org.java.indexer.core.tokenizer.RegexTokenizer;
+import org.java.indexer.core.tokenizer.StreamingTokenizer;
+import org.java.indexer.core.tokenizer.TokenSink;
+import org.java.indexer.core.tokenizer.Tokenizer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.oneOf;
+import static org.hamcrest.Matchers.startsWith;
 import static org.java.indexer.core.TestFilesUtils.appendNewLineToFile;
 import static org.java.indexer.core.TestFilesUtils.createFile;
 import static org.java.indexer.core.TestFilesUtils.createFolderAndFile;
+import static org.java.indexer.core.TestFilesUtils.createZip;
 import static org.java.indexer.core.TestFilesUtils.deleteFiles;
 import static org.java.indexer.core.TestFilesUtils.moveFile;
 import static org.java.indexer.core.TestFilesUtils.readContent;
@@ -66,6 +93,481 @@ class IndexerTest {
     }
 
 
+    @Test
+    public void indexJobCompletesWhenFilesAreQueryable() {
+        //when
+        final IndexingJob job = indexer.index(List.of(outerFolderPath));
+        job.getCompletion().join();
+
+        //then
+        assertThat(job.getDiscovered(), is(job.getTokenized() + job.getSkipped() + job.getExcluded() + job.getFailed()));
+        assertThat(indexer.queryToken("dependency").getOccurrences().keySet(),
+                containsInAnyOrder(innerFolderPath + SEPARATOR + "bla.bla", outerFolderPath + SEPARATOR + "abl.bla"));
+    }
+
+    @Test
+    public void fuzzyQueryFindsTokensWithTypos() {
+        //given
+        indexer.index(List.of(outerFolderPath)).getCompletion().join();
+
+        //when
+        final FuzzyQueryResult substitution = indexer.queryFuzzy("dependancy", 1);
+        final FuzzyQueryResult transposition = indexer.queryFuzzy("lgoback", 1);
+
+        //then
+        assertThat(substitution.getVariants().keySet(), contains("dependency"));
+        assertThat(substitution.getVariants().get("dependency").getOccurrences().keySet(),
+                containsInAnyOrder(innerFolderPath + SEPARATOR + "bla.bla", outerFolderPath + SEPARATOR + "abl.bla"));
+        assertThat(transposition.getVariants().keySet(), contains("logback"));
+    }
+
+    @Test
+    public void ioThreadsModeIndexesSameOccurrences() {
+        //given
+        final IndexSettings settings = IndexSettings.builder().executionMode(ExecutionMode.IO_THREADS).ioThreads(2).build();
+        indexer.index(List.of(outerFolderPath)).getCompletion().join();
+        try (Indexer ioIndexer = new Indexer(List.of(".DS_Store"), new RegexTokenizer(), settings);
+             Indexer ioBulkIndexer = new Indexer(List.of(".DS_Store"), new RegexTokenizer(), settings)) {
+
+            //when
+            final IndexingJob job = ioIndexer.index(List.of(outerFolderPath)).getCompletion().join();
+            ioBulkIndexer.bulkIndex(List.of(outerFolderPath));
+
+            //then
+            final Map<String, Integer> expected = indexer.queryToken("dependency").getOccurrences();
+            assertThat(expected.isEmpty(), is(false));
+            assertThat(job.getFailed(), is(0L));
+            assertThat(ioIndexer.queryToken("dependency").getOccurrences(), is(expected));
+            assertThat(ioBulkIndexer.queryToken("dependency").getOccurrences(), is(expected));
+        }
+    }
+
+    @Test
+    public void ioThreadsModeTokenizesReadAheadContent() {
+        //given
+        final IndexSettings settings = IndexSettings.builder().executionMode(ExecutionMode.IO_THREADS).build();
+        final AtomicInteger fileReads = new AtomicInteger();
+        final Tokenizer tokenizer = new Tokenizer() {
+            private final RegexTokenizer regexTokenizer = new RegexTokenizer();
+
+            @Override
+            public Map<String, Integer> tokenize(Path path) {
+                fileReads.incrementAndGet();
+                return regexTokenizer.tokenize(path);
+            }
+
+            @Override
+            public Map<String, Integer> tokenize(Path path, byte[] content) {
+                return regexTokenizer.tokenize(path, content);
+            }
+        };
+        try (Indexer ioIndexer = new Indexer(List.of(".DS_Store"), tokenizer, settings)) {
+
+            //when
+            ioIndexer.index(List.of(outerFolderPath)).getCompletion().join();
+            ioIndexer.bulkIndex(List.of(innerFolderPath));
+
+            //then
+            assertThat(ioIndexer.queryToken("dependency").getOccurrences().keySet(),
+                    containsInAnyOrder(innerFolderPath + SEPARATOR + "bla.bla", outerFolderPath + SEPARATOR + "abl.bla"));
+            assertThat(fileReads.get(), is(0));
+        }
+    }
+
+    @Test
+    public void substringQueryFindsTokensContainingFragment() {
+        //given
+        final IndexSettings settings = IndexSettings.builder().substringIndex(true).build();
+        try (Indexer substringIndexer = new Indexer(List.of(".DS_Store"), new RegexTokenizer(), settings)) {
+            substringIndexer.index(List.of(outerFolderPath)).getCompletion().join();
+
+            //when
+            final SubstringQueryResult result = substringIndexer.querySubstring("pendenc");
+
+            //then
+            assertThat(result.getMatches().keySet(), contains("dependency"));
+            assertThat(result.getMatches().get("dependency").getOccurrences().keySet(),
+                    containsInAnyOrder(innerFolderPath + SEPARATOR + "bla.bla", outerFolderPath + SEPARATOR + "abl.bla"));
+            assertThat(substringIndexer.querySubstring("ogbac").getMatches().keySet(), contains("logback"));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void booleanQueryCombinesTokenOccurrences(@TempDir Path folder) {
+        //given
+        Files.writeString(folder.resolve("both.txt"), "public static public");
+        Files.writeString(folder.resolve("first.txt"), "public");
+        Files.writeString(folder.resolve("second.txt"), "static");
+        indexer.bulkIndex(List.of(folder.toString()));
+
+        //when
+        final QueryResult all = indexer.queryBoolean(List.of("public", "static"), BooleanOperator.AND);
+        final QueryResult any = indexer.queryBoolean(List.of("public", "static"), BooleanOperator.OR);
+
+        //then
+        assertThat(all.getQueryString(), is("public AND static"));
+        assertThat(all.getOccurrences(), is(Map.of(folder.resolve("both.txt").toString(), 3)));
+        assertThat(any.getOccurrences().keySet(), hasSize(3));
+    }
+
+    @Test
+    @SneakyThrows
+    public void termStatisticsCountIndexedFiles(@TempDir Path folder) {
+        //given
+        Files.writeString(folder.resolve("first.txt"), "common common rare");
+        Files.writeString(folder.resolve("second.txt"), "common");
+
+        //when
+        indexer.bulkIndex(List.of(folder.toString()));
+
+        //then
+        assertThat(indexer.getTermStatistics("common"), is(new TermStatistics("common", 2, 3)));
+        assertThat(indexer.getTermStatistics("missing").getDocumentFrequency(), is(0));
+        assertThat(indexer.topTokens(2), contains(new TermStatistics("common", 2, 3), new TermStatistics("rare", 1, 1)));
+    }
+
+    @Test
+    @SneakyThrows
+    public void identicalFilesShareTokenizedContent(@TempDir Path folder) {
+        //given
+        final AtomicInteger tokenizations = new AtomicInteger();
+        final RegexTokenizer regexTokenizer = new RegexTokenizer();
+        Files.writeString(folder.resolve("first.txt"), "shared shared content");
+        Files.writeString(folder.resolve("copy.txt"), "shared shared content");
+        Files.writeString(folder.resolve("other.txt"), "other content");
+
+        try (Indexer countingIndexer = new Indexer(List.of(), path -> {
+            tokenizations.incrementAndGet();
+            return regexTokenizer.tokenize(path);
+        })) {
+
+            //when
+            countingIndexer.bulkIndex(List.of(folder.toString()));
+
+            //then
+            assertThat(tokenizations.get(), is(2));
+            assertThat(countingIndexer.queryToken("shared").getOccurrences(),
+                    is(Map.of(folder.resolve("first.txt").toString(), 2, folder.resolve("copy.txt").toString(), 2)));
+            assertThat(countingIndexer.getTermStatistics("shared"), is(new TermStatistics("shared", 2, 4)));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void streamingTokenizerPushesTokensToIndex(@TempDir Path folder) {
+        //given
+        final Path file = Files.writeString(folder.resolve("file.txt"), "content");
+        final StreamingTokenizer streamingTokenizer = new StreamingTokenizer() {
+            @Override
+            public void tokenize(Path path, TokenSink sink) {
+                sink.accept("streamed");
+                sink.accept("streamed view".toCharArray(), 0, 8);
+                sink.accept("view", 3);
+            }
+
+            @Override
+            public Map<String, Integer> tokenize(Path path) {
+                throw new UnsupportedOperationException("Tokens should be pushed");
+            }
+        };
+
+        try (Indexer streamingIndexer = new Indexer(List.of(), streamingTokenizer)) {
+            //when
+            streamingIndexer.bulkIndex(List.of(folder.toString()));
+
+            //then
+            assertThat(streamingIndexer.queryToken("streamed").getOccurrences(), is(Map.of(file.toString(), 2)));
+            assertThat(streamingIndexer.queryToken("view").getOccurrences(), is(Map.of(file.toString(), 3)));
+            assertThat(streamingIndexer.getTermStatistics("streamed"), is(new TermStatistics("streamed", 1, 2)));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void sharedContentIsReleasedWithLastFile(@TempDir Path folder) {
+        //given
+        final Path first = Files.writeString(folder.resolve("first.txt"), "duplicated");
+        final Path copy = Files.writeString(folder.resolve("copy.txt"), "duplicated");
+        indexer.index(List.of(folder.toString())).getCompletion().join();
+
+        //when
+        Files.delete(first);
+
+        //then
+        await("Checking the copy is still queryable")
+                .until(() -> indexer.queryToken("duplicated").getOccurrences().keySet(), contains(copy.toString()));
+        assertThat(indexer.getTermStatistics("duplicated"), is(new TermStatistics("duplicated", 1, 1)));
+
+        //when
+        Files.delete(copy);
+
+        //then
+        await("Checking the content is released")
+                .until(() -> indexer.queryToken("duplicated").getOccurrences().keySet(), empty());
+        assertThat(indexer.getTermStatistics("duplicated").getDocumentFrequency(), is(0));
+        assertThat(indexer.topTokens(1), empty());
+    }
+
+    @Test
+    public void closedIndexerCancelsJobs() {
+        //given
+        indexer.close();
+
+        //when
+        final IndexingJob job = indexer.index(List.of(outerFolderPath));
+
+        //then
+        assertThat(job.isCancelled(), is(true));
+    }
+
+    @Test
+    @SneakyThrows
+    public void cancelledJobKeepsIndexConsistent(@TempDir Path folder) {
+        //given
+        final int files = 100;
+        for (int i = 0; i < files; i++) {
+            Files.writeString(folder.resolve("file" + i + ".txt"), "cancelled file" + i);
+        }
+        final AtomicInteger started = new AtomicInteger();
+        final Set<String> tokenized = ConcurrentHashMap.newKeySet();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        try (Indexer blockingIndexer = new Indexer(List.of(), blockingTokenizer(started, tokenized, release))) {
+            final IndexingJob job = blockingIndexer.index(List.of(folder.toString()));
+            await("Checking tokenization is started").until(started::get, greaterThan(0));
+
+            //when
+            job.cancel();
+            release.countDown();
+
+            //then
+            await("Checking files being tokenized are indexed").until(() -> started.get() == tokenized.size()
+                    && blockingIndexer.queryToken("cancelled").getOccurrences().keySet().equals(tokenized)
+                    && blockingIndexer.getTermStatistics("cancelled").getDocumentFrequency() == tokenized.size());
+            assertThat(job.isCancelled(), is(true));
+            assertThat(started.get(), lessThan(files));
+
+            //when
+            blockingIndexer.index(List.of(folder.toString())).getCompletion().join();
+
+            //then
+            assertThat(blockingIndexer.queryToken("cancelled").getOccurrences().keySet(), hasSize(files));
+            assertThat(blockingIndexer.getTermStatistics("cancelled"), is(new TermStatistics("cancelled", files, files)));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void closedIndexerReleasesThreadsMidCrawl(@TempDir Path folder) {
+        //given
+        final int files = 100;
+        for (int i = 0; i < files; i++) {
+            Files.writeString(folder.resolve("file" + i + ".txt"), "closed file" + i);
+        }
+        final AtomicInteger started = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Set<Thread> threadsBefore = indexThreads();
+        final Indexer blockingIndexer = new Indexer(List.of(), blockingTokenizer(started, ConcurrentHashMap.newKeySet(), release));
+        final IndexingJob job = blockingIndexer.index(List.of(folder.toString()));
+        await("Checking tokenization is started").until(started::get, greaterThan(0));
+        final Set<Thread> crawlThreads = indexThreads();
+        crawlThreads.removeAll(threadsBefore);
+
+        //when
+        blockingIndexer.close();
+        release.countDown();
+
+        //then
+        assertThat(job.isCancelled(), is(true));
+        assertThat(crawlThreads, hasItem(hasProperty("name", startsWith("jinx-folder-walker-"))));
+        await("Checking index threads are terminated").until(() -> {
+            final Set<Thread> threads = indexThreads();
+            threads.removeAll(threadsBefore);
+            return threads;
+        }, empty());
+        assertThat(started.get(), lessThan(files));
+        assertThat(blockingIndexer.queryToken("closed").getOccurrences().keySet(), empty());
+        assertThat(blockingIndexer.getTermStatistics("closed").getDocumentFrequency(), is(0));
+    }
+
+    @Test
+    @SneakyThrows
+    public void closedIndexerCancelsQueuedBulkIndexing(@TempDir Path folder) {
+        //given
+        final int workers = Runtime.getRuntime().availableProcessors();
+        final Path busyFolder = Files.createDirectory(folder.resolve("busy"));
+        final Path bulkFolder = Files.createDirectory(folder.resolve("bulk"));
+        for (int i = 0; i < workers * 2; i++) {
+            Files.writeString(busyFolder.resolve("file" + i + ".txt"), "busy file" + i);
+            Files.writeString(bulkFolder.resolve("file" + i + ".txt"), "bulk file" + i);
+        }
+        final AtomicInteger started = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Indexer blockingIndexer = new Indexer(List.of(), blockingTokenizer(started, ConcurrentHashMap.newKeySet(), release));
+        blockingIndexer.index(List.of(busyFolder.toString()));
+        await("Checking all index workers are busy").until(started::get, is(workers));
+        final CompletableFuture<IndexingJob> bulkIndexing = new CompletableFuture<>();
+        final Thread bulkThread = new Thread(() -> {
+            try {
+                bulkIndexing.complete(blockingIndexer.bulkIndex(List.of(bulkFolder.toString())));
+            } catch (RuntimeException e) {
+                bulkIndexing.completeExceptionally(e);
+            }
+        });
+        bulkThread.start();
+        await("Checking bulk index tasks are queued").until(() -> Arrays.stream(bulkThread.getStackTrace())
+                .anyMatch(frame -> frame.getMethodName().equals("invokeAll")));
+
+        //when
+        blockingIndexer.close();
+        release.countDown();
+
+        //then
+        final IndexingJob job = bulkIndexing.get(1, TimeUnit.MINUTES);
+        assertThat(job.isCancelled(), is(true));
+        assertThat(blockingIndexer.queryToken("bulk").getOccurrences().keySet(), empty());
+        assertThat(blockingIndexer.getTermStatistics("bulk").getDocumentFrequency(), is(0));
+    }
+
+    @Test
+    public void indexArchiveEntriesChangedSinceLastIndexing(@TempDir Path folder) {
+        //given
+        final String archivePath = folder.resolve("archive.zip").toString();
+        createZip(archivePath, Map.of("dir/first.txt", "archived first", "second.txt", "archived second"));
+        indexer.index(List.of(archivePath)).getCompletion().join();
+
+        //when
+        createZip(archivePath, Map.of("dir/first.txt", "archived first", "third.txt", "archived third"));
+        final IndexingJob job = indexer.index(List.of(archivePath));
+        job.getCompletion().join();
+
+        //then
+        assertThat(indexer.queryToken("archived").getOccurrences().keySet(),
+                containsInAnyOrder(archivePath + "!" + SEPARATOR + "dir" + SEPARATOR + "first.txt",
+                        archivePath + "!" + SEPARATOR + "third.txt"));
+        assertThat(job.getSkipped(), is(1L));
+    }
+
+    @Test
+    @SneakyThrows
+    public void binaryLargeAndDeniedFilesAreExcluded(@TempDir Path folder) {
+        //given
+        final IndexSettings settings = IndexSettings.builder().maxFileSize(100).deniedExtensions(Set.of("log")).build();
+        Files.write(folder.resolve("image.png"), new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, 0, 0, 13, 'I', 'H', 'D', 'R'});
+        Files.writeString(folder.resolve("large.txt"), "excluded ".repeat(100));
+        Files.writeString(folder.resolve("denied.log"), "excluded");
+        Files.writeString(folder.resolve("text.txt"), "included");
+
+        try (Indexer policyIndexer = new Indexer(List.of(), new RegexTokenizer(), settings)) {
+            //when
+            final IndexingJob job = policyIndexer.index(List.of(folder.toString()));
+            job.getCompletion().join();
+
+            //then
+            assertThat(job.getExcluded(), is(3L));
+            assertThat(job.getTokenized(), is(1L));
+            assertThat(policyIndexer.queryToken("excluded").getOccurrences().keySet(), empty());
+            assertThat(policyIndexer.queryToken("included").getOccurrences().keySet(),
+                    contains(folder.resolve("text.txt").toString()));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void movedFolderFilesAreQueryableUnderNewPath(@TempDir Path folder) {
+        //given
+        final AtomicInteger tokenizations = new AtomicInteger();
+        final RegexTokenizer regexTokenizer = new RegexTokenizer();
+        final Path movedFolder = Files.createDirectory(folder.resolve("before"));
+        Files.writeString(movedFolder.resolve("moved.txt"), "relocated");
+
+        try (Indexer countingIndexer = new Indexer(List.of(), path -> {
+            tokenizations.incrementAndGet();
+            return regexTokenizer.tokenize(path);
+        })) {
+            countingIndexer.index(List.of(folder.toString())).getCompletion().join();
+
+            //when
+            final Path targetFolder = Files.move(movedFolder, folder.resolve("after"));
+
+            //then
+            await("Checking the moved file under the new path")
+                    .until(() -> countingIndexer.queryToken("relocated").getOccurrences().keySet(),
+                            contains(targetFolder.resolve("moved.txt").toString()));
+            assertThat(tokenizations.get(), is(1));
+            assertThat(countingIndexer.getTermStatistics("relocated"), is(new TermStatistics("relocated", 1, 1)));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void renamedFileIsQueryableWithoutTokenization(@TempDir Path folder) {
+        //given
+        final AtomicInteger tokenizations = new AtomicInteger();
+        final RegexTokenizer regexTokenizer = new RegexTokenizer();
+        final Path renamedFile = Files.writeString(folder.resolve("before.txt"), "renamed");
+
+        try (Indexer countingIndexer = new Indexer(List.of(), path -> {
+            tokenizations.incrementAndGet();
+            return regexTokenizer.tokenize(path);
+        })) {
+            countingIndexer.index(List.of(folder.toString())).getCompletion().join();
+
+            //when
+            final Path targetFile = Files.move(renamedFile, folder.resolve("after.txt"));
+
+            //then
+            await("Checking the renamed file under the new path")
+                    .until(() -> countingIndexer.queryToken("renamed").getOccurrences().keySet(),
+                            contains(targetFile.toString()));
+            assertThat(tokenizations.get(), is(1));
+            assertThat(countingIndexer.getTermStatistics("renamed"), is(new TermStatistics("renamed", 1, 1)));
+        }
+    }
+
+    @Test
+    public void bulkIndexFilesAreQueryableOnReturn() {
+        //when
+        indexer.bulkIndex(List.of(outerFolderPath, innerFolderPath + SEPARATOR + "bla.bla"));
+
+        //then
+        assertThat(indexer.queryToken("dependency").getOccurrences().keySet(),
+                containsInAnyOrder(innerFolderPath + SEPARATOR + "bla.bla", outerFolderPath + SEPARATOR + "abl.bla"));
+        assertThat(indexer.queryToken("logback").getOccurrences().keySet(),
+                contains(innerFolderPath + SEPARATOR + "bla.bla"));
+    }
+
+    @Test
+    @SneakyThrows
+    public void queriesDuringBulkIndexSeeNoneOrAllFiles(@TempDir Path folder) {
+        //given
+        for (int i = 0; i < 200; i++) {
+            Files.writeString(folder.resolve("file" + i + ".txt"), i % 2 == 0 ? "bulk duplicated" : "bulk unique" + i);
+        }
+        final Set<Integer> observedSizes = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean loading = new AtomicBoolean(true);
+        final CompletableFuture<Void> queries = CompletableFuture.runAsync(() -> {
+            while (loading.get()) {
+                observedSizes.add(indexer.queryToken("bulk").getOccurrences().size());
+            }
+        });
+
+        //when
+        try {
+            indexer.bulkIndex(List.of(folder.toString()));
+        } finally {
+            loading.set(false);
+        }
+        queries.join();
+
+        //then
+        assertThat(observedSizes, everyItem(is(oneOf(0, 200))));
+        assertThat(indexer.queryToken("bulk").getOccurrences().keySet(), hasSize(200));
+        assertThat(indexer.getTermStatistics("bulk"), is(new TermStatistics("bulk", 200, 200)));
+        assertThat(indexer.getTermStatistics("duplicated"), is(new TermStatistics("duplicated", 100, 100)));
+    }
+
     @SneakyThrows
     @Test
     public void doubleDotFilePath() {
@@ -175,4 +677,33 @@ class IndexerTest {
                 empty());
     }
 
+    /**
+     * Tokenizer blocking until released, so files stay being tokenized while the test cancels the indexing.
+     */
+    private static Tokenizer blockingTokenizer(AtomicInteger started, Set<String> tokenized, CountDownLatch release) {
+        final RegexTokenizer regexTokenizer = new RegexTokenizer();
+        return path -> {
+            started.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            final Map<String, Integer> tokens = regexTokenizer.tokenize(path);
+            tokenized.add(path.toString());
+            return tokens;
+        };
+    }
+
+    private static Set<Thread> indexThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(Thread::isAlive)
+                .filter(thread -> thread.getName().startsWith("jinx-indexer-")
+                        || thread.getName().startsWith("jinx-file-reader-")
+                        || thread.getName().startsWith("jinx-folder-walker-")
+                        || thread.getName().equals("jinx-segment-maintenance")
+                        || thread.getName().equals("jinx-folder-watcher"))
+                .collect(Collectors.toSet());
+    }
 }
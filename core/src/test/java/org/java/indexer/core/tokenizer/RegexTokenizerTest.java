@@ -2,13 +2,24 @@ package org.java.indexer.core.tokenizer;
 
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
+import static org.java.indexer.core.utils.FileUtils.findLineAlignedChunks;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class RegexTokenizerTest {
 
@@ -67,4 +78,129 @@ class RegexTokenizerTest {
         //then
         assertEquals(Map.of("TEXTINCLUDE", 1, "BEGIN", 1, "INVOKED", 1), result);
     }
-}
\ No newline at end of file
+
+    @Test
+    @SneakyThrows
+    public void readContentIsDecodedAsFile() {
+        //given
+        final Path russianWordsFile = Paths.get(RegexTokenizerTest.class.getResource(SEPARATOR + "russianWords").toURI());
+        final Path utf16File = Paths.get(RegexTokenizerTest.class.getResource(SEPARATOR + "utf16").toURI());
+
+        //when
+        final Map<String, Integer> russianWords = tokenizer.tokenize(russianWordsFile, Files.readAllBytes(russianWordsFile));
+        final Map<String, Integer> utf16 = tokenizer.tokenize(utf16File, Files.readAllBytes(utf16File));
+
+        //then
+        assertEquals(tokenizer.tokenize(russianWordsFile), russianWords);
+        assertEquals(tokenizer.tokenize(utf16File), utf16);
+    }
+
+    @Test
+    @SneakyThrows
+    public void streamingTokenizationPushesCountedTokens() {
+        //given
+        final Path latinWordsFile = Paths.get(RegexTokenizerTest.class.getResource(SEPARATOR + "latinWords").toURI());
+        final Map<String, Integer> result = new HashMap<>();
+
+        //when
+        tokenizer.tokenize(latinWordsFile, (token, count) -> result.merge(token.toString(), count, Integer::sum));
+
+        //then
+        assertEquals(tokenizer.tokenize(latinWordsFile), result);
+    }
+
+    @Test
+    public void countedTokensAreReturnedAsMap() {
+        //given
+        final TokenCounter counter = new TokenCounter();
+        final Map<String, Integer> expected = new HashMap<>();
+        final char[] line = "token".toCharArray();
+        for (int i = 0; i < 1000; i++) {
+            counter.accept("token" + i % 300);
+            expected.merge("token" + i % 300, 1, Integer::sum);
+        }
+        counter.accept(line, 0, line.length);
+        counter.accept(line, 0, 3);
+        expected.merge("token", 1, Integer::sum);
+        expected.merge("tok", 1, Integer::sum);
+
+        //when
+        final Map<String, Integer> result = counter.toMap();
+
+        //then
+        assertEquals(expected, result);
+        assertEquals(expected.size(), result.size());
+        assertEquals(4, result.get("token0"));
+        assertNull(result.get("missing"));
+        assertTrue(result.containsKey("tok"));
+    }
+
+    @Test
+    public void mapReturningTokenizerIsAdaptedToStreaming() {
+        //given
+        final Tokenizer mapTokenizer = path -> Map.of("token1", 2, "token2", 6);
+        final Map<String, Integer> result = new HashMap<>();
+
+        //when
+        StreamingTokenizer.of(mapTokenizer).tokenize(Paths.get("file"), (token, count) -> result.put(token.toString(), count));
+
+        //then
+        assertEquals(Map.of("token1", 2, "token2", 6), result);
+    }
+
+    @Test
+    public void streamTokenizationDetectsByteOrderMark() {
+        //given
+        final byte[] utf16Content = "BEGIN INVOKED".getBytes(StandardCharsets.UTF_16);
+        final byte[] utf8Content = "тест test".getBytes(StandardCharsets.UTF_8);
+
+        //when
+        final Map<String, Integer> utf16Result = tokenizer.tokenize(new ByteArrayInputStream(utf16Content));
+        final Map<String, Integer> utf8Result = tokenizer.tokenize(new ByteArrayInputStream(utf8Content));
+
+        //then
+        assertEquals(Map.of("BEGIN", 1, "INVOKED", 1), utf16Result);
+        assertEquals(Map.of("тест", 1, "test", 1), utf8Result);
+    }
+
+    @Test
+    @SneakyThrows
+    public void parallelTokenizationGivesSequentialResult() {
+        //given
+        final RegexTokenizer parallelTokenizer = new RegexTokenizer(Pattern.compile("[^A-Za-z0-9_А-яЁё]"), 0);
+        final Path latinWordsFile = Paths.get(RegexTokenizerTest.class.getResource(SEPARATOR + "latinWords").toURI());
+        final Path utf16File = Paths.get(RegexTokenizerTest.class.getResource(SEPARATOR + "utf16").toURI());
+
+        //when
+        final Map<String, Integer> latinResult = parallelTokenizer.tokenize(latinWordsFile);
+        final Map<String, Integer> utf16Result = parallelTokenizer.tokenize(utf16File);
+
+        //then
+        assertEquals(tokenizer.tokenize(latinWordsFile), latinResult);
+        assertEquals(tokenizer.tokenize(utf16File), utf16Result);
+    }
+
+    @Test
+    @SneakyThrows
+    public void multiChunkTokenizationGivesSequentialResult(@TempDir Path folder) {
+        //given
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            content.append("line").append(i).append(" тест").append(i % 7).append(" shared_token")
+                    .append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        content.append("last line without line feed тест");
+        final Path file = Files.writeString(folder.resolve("chunks.txt"), content, StandardCharsets.UTF_8);
+        final RegexTokenizer chunkTokenizer = new RegexTokenizer(Pattern.compile("[^A-Za-z0-9_А-яЁё]"), 0, 16);
+
+        //when
+        final Map<String, Integer> result = chunkTokenizer.tokenize(file);
+
+        //then
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertTrue(findLineAlignedChunks(channel, 16).length > 100);
+        }
+        assertEquals(tokenizer.tokenize(file), result);
+        assertEquals(500, result.get("shared_token"));
+    }
+}
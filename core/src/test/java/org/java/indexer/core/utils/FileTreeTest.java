@@ -0,0 +1,61 @@
+package org.java.indexer.core.utils;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+class FileTreeTest {
+
+    private final IgnoreRules rules = IgnoreRules.compile(List.of("target/"));
+
+    @Test
+    @SneakyThrows
+    public void singleWalkListsFoldersAndFiles(@TempDir Path root) {
+        //given
+        final Path nested = Files.createDirectories(root.resolve("a").resolve("b"));
+        Files.createDirectories(root.resolve("target"));
+        Files.writeString(root.resolve("root.txt"), "root");
+        Files.writeString(nested.resolve("nested.txt"), "nested");
+        Files.writeString(root.resolve("target").resolve("ignored.txt"), "ignored");
+
+        //when
+        final FileTree tree = FileTree.walk(root, rules);
+
+        //then
+        assertEquals(Set.of(root, root.resolve("a"), nested), tree.getFolders());
+        assertEquals(Set.of(root.resolve("root.txt"), nested.resolve("nested.txt")), tree.getFiles());
+        assertTrue(tree.getUnreadableFolders().isEmpty());
+    }
+
+    @Test
+    @SneakyThrows
+    public void unreadableFolderIsReportedAndSkipped(@TempDir Path root) {
+        //given
+        final Path locked = Files.createDirectories(root.resolve("locked"));
+        Files.writeString(locked.resolve("secret.txt"), "secret");
+        Files.writeString(root.resolve("open.txt"), "open");
+        Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+        assumeFalse(Files.isReadable(locked), "Permissions are not enforced for the current user");
+
+        try {
+            //when
+            final FileTree tree = FileTree.walk(root, rules);
+
+            //then
+            assertEquals(Set.of(root.resolve("open.txt")), tree.getFiles());
+            assertEquals(Set.of(locked), tree.getUnreadableFolders());
+        } finally {
+            Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.java.indexer.core.utils;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class FileUtilsTest {
+
+    @Test
+    public void chunksStartAfterLineFeed(@TempDir Path folder) {
+        //when
+        final long[] bounds = chunks(folder, "aaaa\nbbbb\ncccc\n", 3);
+
+        //then
+        assertArrayEquals(new long[]{0, 5, 10, 15}, bounds);
+    }
+
+    @Test
+    public void lastLineWithoutLineFeedEndsLastChunk(@TempDir Path folder) {
+        //when
+        final long[] bounds = chunks(folder, "aaaa\nbbbb\ncc", 3);
+
+        //then
+        assertArrayEquals(new long[]{0, 5, 10, 12}, bounds);
+    }
+
+    @Test
+    public void lineLongerThanChunkIsNotDivided(@TempDir Path folder) {
+        //when
+        final long[] middleLine = chunks(folder, "ab\n0123456789abcdef\nxy\n", 4);
+        final long[] lastLine = chunks(folder, "ab\n0123456789", 4);
+
+        //then
+        assertArrayEquals(new long[]{0, 20, 23}, middleLine);
+        assertArrayEquals(new long[]{0, 13}, lastLine);
+    }
+
+    @Test
+    public void lineLongerThanSearchBufferIsNotDivided(@TempDir Path folder) {
+        //given
+        final String longLine = "x".repeat(200 * 1024);
+
+        //when
+        final long[] bounds = chunks(folder, "ab\n" + longLine + "\nxy", 4);
+
+        //then
+        assertArrayEquals(new long[]{0, longLine.length() + 4L, longLine.length() + 6L}, bounds);
+    }
+
+    @Test
+    public void emptyFileIsSingleEmptyChunk(@TempDir Path folder) {
+        //when
+        final long[] bounds = chunks(folder, "", 4);
+
+        //then
+        assertArrayEquals(new long[]{0, 0}, bounds);
+    }
+
+    @SneakyThrows
+    private static long[] chunks(Path folder, String content, long chunkSize) {
+        final Path file = Files.writeString(Files.createTempFile(folder, "chunks", ".txt"), content);
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return FileUtils.findLineAlignedChunks(channel, chunkSize);
+        }
+    }
+}
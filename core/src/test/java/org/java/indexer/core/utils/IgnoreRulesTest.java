@@ -0,0 +1,49 @@
+package org.java.indexer.core.utils;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IgnoreRulesTest {
+
+    private final IgnoreRules rules = IgnoreRules.compile(List.of("# comment", "node_modules/", "*.log", "src/gen*", "!keep.log"));
+
+    @Test
+    public void namesGlobsAndPathsAreMatched() {
+        //then
+        assertTrue(rules.isIgnored(Paths.get("/project/node_modules"), true));
+        assertFalse(rules.isIgnored(Paths.get("/project/node_modules"), false));
+        assertTrue(rules.isIgnored(Paths.get("/project/build.log"), false));
+        assertFalse(rules.isIgnored(Paths.get("/project/keep.log"), false));
+        assertTrue(rules.isIgnored(Paths.get("/project/src/generated"), true));
+        assertFalse(rules.isIgnored(Paths.get("/project/test/generated"), true));
+    }
+
+    @Test
+    @SneakyThrows
+    public void ignoredFoldersAreNotWalked(@TempDir Path root) {
+        //given
+        Files.createDirectories(root.resolve("node_modules").resolve("library"));
+        Files.writeString(root.resolve("node_modules").resolve("library").resolve("index.js"), "ignored");
+        Files.writeString(root.resolve("build.log"), "ignored");
+        Files.writeString(root.resolve("main.js"), "indexed");
+
+        //when
+        final Set<Path> files = FileUtils.listFiles(root, rules);
+        final Set<Path> folders = FileUtils.listFolders(root, rules);
+
+        //then
+        assertEquals(Set.of(root.resolve("main.js")), files);
+        assertEquals(Set.of(root), folders);
+    }
+}
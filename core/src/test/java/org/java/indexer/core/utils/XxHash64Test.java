@@ -0,0 +1,84 @@
+package org.java.indexer.core.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XxHash64Test {
+
+    @Test
+    public void knownAnswers() {
+        //given
+        final Map<String, Long> expected = Map.of(
+                "", 0xEF46DB3751D8E999L,
+                "a", 0xD24EC4F1A98C6E5BL,
+                "abc", 0x44BC2CF5AD770999L);
+
+        expected.forEach((input, hash) -> {
+            //when
+            final XxHash64 xxHash = new XxHash64();
+            xxHash.update(ByteBuffer.wrap(input.getBytes(StandardCharsets.US_ASCII)));
+
+            //then
+            assertEquals(hash, xxHash.digest(), "Hash of \"" + input + "\"");
+            assertEquals(input.length(), xxHash.getLength());
+        });
+    }
+
+    @Test
+    public void lengthsAroundStripeSize() {
+        //given
+        final byte[] data = sequence(256);
+        final Map<Integer, Long> expected = Map.of(
+                31, 0xC346D2B59B4D8EE1L,
+                32, 0xCBF59C5116FF32B4L,
+                33, 0x0C535D1ACAFB8EADL,
+                63, 0xE26AA9E2A95F8E4FL,
+                64, 0xF7C67301DB6713F0L,
+                65, 0xC31EB63B2AE4465BL,
+                100, 0x6AC1E58032166597L,
+                256, 0x1FACBE8406CD904BL);
+
+        expected.forEach((length, hash) -> {
+            //when
+            final XxHash64 xxHash = new XxHash64();
+            xxHash.update(ByteBuffer.wrap(data, 0, length));
+
+            //then
+            assertEquals(hash, xxHash.digest(), "Hash of " + length + " bytes");
+        });
+    }
+
+    @Test
+    public void splitUpdatesGiveOneShotDigest() {
+        //given
+        final byte[] data = sequence(100);
+        final XxHash64 oneShot = new XxHash64();
+        oneShot.update(ByteBuffer.wrap(data));
+
+        for (int first = 0; first <= data.length; first++) {
+            for (int second = first; second <= data.length; second += 7) {
+                //when
+                final XxHash64 xxHash = new XxHash64();
+                xxHash.update(ByteBuffer.wrap(data, 0, first));
+                xxHash.update(ByteBuffer.wrap(data, first, second - first));
+                xxHash.update(ByteBuffer.wrap(data, second, data.length - second));
+
+                //then
+                assertEquals(oneShot.digest(), xxHash.digest(), "Split at " + first + " and " + second);
+            }
+        }
+    }
+
+    private static byte[] sequence(int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
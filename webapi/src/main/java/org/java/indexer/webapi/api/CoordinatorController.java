@@ -0,0 +1,255 @@
+package org.java.indexer.webapi.api;
+
+import org.java.indexer.core.index.BooleanOperator;
+import org.java.indexer.core.index.QueryResult;
+import org.java.indexer.core.index.TermStatistics;
+import org.java.indexer.webapi.cluster.DistributedFuzzyQueryResult;
+import org.java.indexer.webapi.cluster.DistributedQueryResult;
+import org.java.indexer.webapi.cluster.DistributedSubstringQueryResult;
+import org.java.indexer.webapi.cluster.DistributedTermStatistics;
+import org.java.indexer.webapi.cluster.WorkerClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Index API of coordinator node. Paths are distributed between worker nodes,
+ * queries are sent to every worker and their results are merged.
+ */
+@RestController
+@RequestMapping("/index")
+@ConditionalOnProperty(name = "jinx.role", havingValue = "coordinator")
+public class CoordinatorController {
+
+    private static final Logger log = LoggerFactory.getLogger(CoordinatorController.class);
+    private static final Comparator<TermStatistics> RANKING_ORDER = Comparator
+            .comparingInt(TermStatistics::getDocumentFrequency).reversed()
+            .thenComparing(Comparator.comparingLong(TermStatistics::getTotalFrequency).reversed())
+            .thenComparing(TermStatistics::getToken);
+
+    private final WorkerClient workerClient;
+
+    public CoordinatorController(WorkerClient workerClient) {
+        this.workerClient = workerClient;
+    }
+
+    /**
+     * Sends the paths to their workers, workers without paths are skipped so their indexes are kept.
+     */
+    @PostMapping
+    @SuppressWarnings({"unchecked"})
+    public ResponseEntity<?> index(@RequestBody Map<String, Object> body) {
+        final List<String> paths = (List<String>) body.get("paths");
+        final Map<String, List<String>> pathsByWorker = new LinkedHashMap<>();
+        paths.forEach(path -> pathsByWorker.computeIfAbsent(workerClient.workerOf(path), worker -> new ArrayList<>()).add(path));
+
+        final Map<String, CompletableFuture<Void>> responses = new LinkedHashMap<>();
+        pathsByWorker.forEach((worker, workerPaths) -> {
+            final Map<String, Object> workerBody = new HashMap<>(body);
+            workerBody.put("paths", workerPaths);
+            responses.put(worker, workerClient.index(worker, workerBody));
+        });
+        final List<String> failedNodes = awaitAll(responses).getFailedNodes();
+        return failedNodes.isEmpty()
+                ? ResponseEntity.ok().build()
+                : ResponseEntity.internalServerError().body(Map.of("failedNodes", failedNodes));
+    }
+
+    @GetMapping("/query")
+    public ResponseEntity<?> queryBoolean(@RequestParam List<String> tokens,
+                                          @RequestParam(defaultValue = "AND") BooleanOperator operator,
+                                          @RequestParam(required = false) Long timeoutMillis) {
+        final Responses<Map<String, Object>> results = awaitAll(sendToWorkers(worker ->
+                workerClient.queryBoolean(worker, tokens, operator.name(), timeoutMillis)));
+        final String queryString = String.join(" " + operator + " ", new LinkedHashSet<>(tokens));
+        return ResponseEntity.ok(new DistributedQueryResult(queryString, mergeOccurrences(results.getSucceeded()),
+                results.getFailedNodes(), anyPartial(results.getSucceeded())));
+    }
+
+    @GetMapping("/query/{token}")
+    public ResponseEntity<?> queryToken(@PathVariable String token, @RequestParam(required = false) Long timeoutMillis) {
+        final Responses<Map<String, Object>> results = awaitAll(sendToWorkers(worker ->
+                workerClient.queryToken(worker, token, timeoutMillis)));
+        return ResponseEntity.ok(new DistributedQueryResult(token, mergeOccurrences(results.getSucceeded()),
+                results.getFailedNodes(), anyPartial(results.getSucceeded())));
+    }
+
+    @GetMapping("/query/{token}/fuzzy")
+    public ResponseEntity<?> queryFuzzy(@PathVariable String token, @RequestParam(defaultValue = "1") int maxEdits,
+                                        @RequestParam(required = false) Long timeoutMillis) {
+        final Responses<Map<String, Object>> results = awaitAll(sendToWorkers(worker ->
+                workerClient.queryFuzzy(worker, token, maxEdits, timeoutMillis)));
+        final Map<String, QueryResult> variants = mergeQueryResults(results.getSucceeded(), "variants",
+                Comparator.<QueryResult>comparingInt(variant -> editDistance(token, variant.getQueryString()))
+                        .thenComparing(Comparator.<QueryResult>comparingInt(variant -> variant.getOccurrences().size()).reversed())
+                        .thenComparing(QueryResult::getQueryString));
+        return ResponseEntity.ok(new DistributedFuzzyQueryResult(token, maxEdits, variants, results.getFailedNodes(),
+                anyPartial(results.getSucceeded())));
+    }
+
+    @GetMapping("/query/{fragment}/substring")
+    public ResponseEntity<?> querySubstring(@PathVariable String fragment,
+                                            @RequestParam(required = false) Long timeoutMillis) {
+        final Responses<Map<String, Object>> results = awaitAll(sendToWorkers(worker ->
+                workerClient.querySubstring(worker, fragment, timeoutMillis)));
+        final Map<String, QueryResult> matches = mergeQueryResults(results.getSucceeded(), "matches",
+                Comparator.<QueryResult>comparingInt(match -> match.getOccurrences().size()).reversed()
+                        .thenComparing(QueryResult::getQueryString));
+        return ResponseEntity.ok(new DistributedSubstringQueryResult(fragment, matches, results.getFailedNodes(),
+                anyPartial(results.getSucceeded())));
+    }
+
+    /**
+     * Merges top tokens of every worker, see {@link DistributedTermStatistics}.
+     */
+    @GetMapping("/tokens/top")
+    public ResponseEntity<?> topTokens(@RequestParam(defaultValue = "10") int k) {
+        final Responses<List<Map<String, Object>>> results = awaitAll(sendToWorkers(worker ->
+                workerClient.topTokens(worker, k)));
+        final List<Map<String, Object>> statistics = new ArrayList<>();
+        results.getSucceeded().forEach(statistics::addAll);
+        final List<TermStatistics> topTokens = mergeStatistics(statistics).stream()
+                .sorted(RANKING_ORDER)
+                .limit(k)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(new DistributedTermStatistics(topTokens, results.getFailedNodes()));
+    }
+
+    @GetMapping("/tokens/{token}")
+    public ResponseEntity<?> termStatistics(@PathVariable String token) {
+        final Responses<Map<String, Object>> results = awaitAll(sendToWorkers(worker ->
+                workerClient.termStatistics(worker, token)));
+        final List<TermStatistics> statistics = mergeStatistics(results.getSucceeded());
+        return ResponseEntity.ok(new DistributedTermStatistics(
+                statistics.isEmpty() ? List.of(new TermStatistics(token, 0, 0)) : statistics, results.getFailedNodes()));
+    }
+
+    @DeleteMapping
+    public ResponseEntity<?> stopIndex() {
+        final Map<String, CompletableFuture<Void>> responses = sendToWorkers(workerClient::delete);
+        final List<String> failedNodes = awaitAll(responses).getFailedNodes();
+        return failedNodes.isEmpty()
+                ? ResponseEntity.ok().build()
+                : ResponseEntity.internalServerError().body(Map.of("failedNodes", failedNodes));
+    }
+
+    private <T> Map<String, CompletableFuture<T>> sendToWorkers(Function<String, CompletableFuture<T>> request) {
+        final Map<String, CompletableFuture<T>> responses = new LinkedHashMap<>();
+        workerClient.getWorkers().forEach(worker -> responses.put(worker, request.apply(worker)));
+        return responses;
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static Map<String, Integer> mergeOccurrences(List<Map<String, Object>> results) {
+        final Map<String, Integer> occurrences = new HashMap<>();
+        results.forEach(result ->
+                ((Map<String, Number>) result.get("occurrences")).forEach((path, count) -> occurrences.put(path, count.intValue())));
+        return occurrences;
+    }
+
+    private static boolean anyPartial(List<Map<String, Object>> results) {
+        return results.stream().anyMatch(result -> Boolean.TRUE.equals(result.get("partial")));
+    }
+
+    /**
+     * Merges query results of every matched token found under the key of worker results.
+     */
+    @SuppressWarnings({"unchecked"})
+    private static Map<String, QueryResult> mergeQueryResults(List<Map<String, Object>> results, String key,
+                                                              Comparator<QueryResult> order) {
+        final Map<String, List<Map<String, Object>>> resultsByToken = new HashMap<>();
+        results.forEach(result -> ((Map<String, Map<String, Object>>) result.get(key)).forEach((token, tokenResult) ->
+                resultsByToken.computeIfAbsent(token, t -> new ArrayList<>()).add(tokenResult)));
+        final Map<String, QueryResult> merged = new LinkedHashMap<>();
+        resultsByToken.entrySet().stream()
+                .map(entry -> new QueryResult(entry.getKey(), mergeOccurrences(entry.getValue()), anyPartial(entry.getValue()),
+                        entry.getValue().stream().mapToLong(result -> ((Number) result.get("tookMillis")).longValue()).max().orElse(0)))
+                .sorted(order)
+                .forEachOrdered(result -> merged.put(result.getQueryString(), result));
+        return merged;
+    }
+
+    private static List<TermStatistics> mergeStatistics(List<Map<String, Object>> statistics) {
+        final Map<String, TermStatistics> merged = new HashMap<>();
+        statistics.forEach(result -> {
+            final String token = (String) result.get("token");
+            merged.merge(token, new TermStatistics(token, ((Number) result.get("documentFrequency")).intValue(),
+                            ((Number) result.get("totalFrequency")).longValue()),
+                    (first, second) -> new TermStatistics(token, first.getDocumentFrequency() + second.getDocumentFrequency(),
+                            first.getTotalFrequency() + second.getTotalFrequency()));
+        });
+        return merged.values().stream()
+                .filter(term -> term.getDocumentFrequency() > 0)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Edit distance counting transpositions of adjacent characters like the fuzzy query of the index,
+     * so merged variants are ordered by closeness as on a single node.
+     */
+    private static int editDistance(String first, String second) {
+        final int[][] distances = new int[first.length() + 1][second.length() + 1];
+        for (int i = 0; i <= first.length(); i++) {
+            for (int j = 0; j <= second.length(); j++) {
+                if (i == 0 || j == 0) {
+                    distances[i][j] = i + j;
+                    continue;
+                }
+                final int substitution = first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1;
+                distances[i][j] = Math.min(Math.min(distances[i - 1][j] + 1, distances[i][j - 1] + 1),
+                        distances[i - 1][j - 1] + substitution);
+                if (i > 1 && j > 1 && first.charAt(i - 1) == second.charAt(j - 2) && first.charAt(i - 2) == second.charAt(j - 1)) {
+                    distances[i][j] = Math.min(distances[i][j], distances[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return distances[first.length()][second.length()];
+    }
+
+    private static <T> Responses<T> awaitAll(Map<String, CompletableFuture<T>> responses) {
+        final Responses<T> result = new Responses<>();
+        responses.forEach((worker, response) -> {
+            try {
+                result.getSucceeded().add(response.join());
+            } catch (CompletionException e) {
+                log.error("Worker {} request failed", worker, e.getCause());
+                result.getFailedNodes().add(worker);
+            }
+        });
+        return result;
+    }
+
+    private static class Responses<T> {
+        private final List<T> succeeded = new ArrayList<>();
+        private final List<String> failedNodes = new ArrayList<>();
+
+        List<T> getSucceeded() {
+            return succeeded;
+        }
+
+        List<String> getFailedNodes() {
+            return failedNodes;
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package org.java.indexer.webapi.api;
 
 import org.java.indexer.core.Indexer;
+import org.java.indexer.core.index.BooleanOperator;
+import org.java.indexer.core.index.FuzzyQueryResult;
+import org.java.indexer.core.index.QueryResult;
+import org.java.indexer.core.index.SubstringQueryResult;
+import org.java.indexer.core.index.TermStatistics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -8,15 +14,23 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Index API of standalone and worker nodes, every node owns a single local {@link Indexer}.
+ * Queries of a node without index are answered with empty results, e.g. worker which was not sent any paths.
+ */
 @RestController
 @RequestMapping("/index")
+@ConditionalOnExpression("'${jinx.role:standalone}' != 'coordinator'")
 public class IndexController {
 
     private Indexer indexer;
@@ -27,6 +41,9 @@ public class IndexController {
         final List<String> paths = (List<String>) body.get("paths");
         final List<String> ignoredNames = Optional.ofNullable((List<String>) body.get("ignoredNames")).orElse(Collections.emptyList());
 
+        if (indexer != null) {
+            indexer.close();
+        }
         indexer = Optional.ofNullable(body.get("regEx"))
                 .map(o -> (String) o)
                 .map(s -> new Indexer(ignoredNames, s))
@@ -36,15 +53,63 @@ public class IndexController {
         return ResponseEntity.ok().build();
     }
 
+    @GetMapping("/query")
+    public ResponseEntity<?> queryBoolean(@RequestParam List<String> tokens,
+                                          @RequestParam(defaultValue = "AND") BooleanOperator operator,
+                                          @RequestParam(required = false) Long timeoutMillis) {
+        if (indexer == null) {
+            return ResponseEntity.ok(new QueryResult(String.join(" " + operator + " ", new LinkedHashSet<>(tokens)), Map.of()));
+        }
+        return ResponseEntity.ok(indexer.queryBoolean(tokens, operator, toTimeout(timeoutMillis)));
+    }
+
     @GetMapping("/query/{token}")
-    public ResponseEntity<?> queryToken(@PathVariable String token) {
-        return ResponseEntity.ok(indexer.queryToken(token));
+    public ResponseEntity<?> queryToken(@PathVariable String token, @RequestParam(required = false) Long timeoutMillis) {
+        if (indexer == null) {
+            return ResponseEntity.ok(new QueryResult(token, Map.of()));
+        }
+        return ResponseEntity.ok(indexer.queryToken(token, toTimeout(timeoutMillis)));
+    }
+
+    @GetMapping("/query/{token}/fuzzy")
+    public ResponseEntity<?> queryFuzzy(@PathVariable String token, @RequestParam(defaultValue = "1") int maxEdits,
+                                        @RequestParam(required = false) Long timeoutMillis) {
+        if (indexer == null) {
+            return ResponseEntity.ok(new FuzzyQueryResult(token, maxEdits, Map.of(), false, 0));
+        }
+        return ResponseEntity.ok(indexer.queryFuzzy(token, maxEdits, toTimeout(timeoutMillis)));
+    }
+
+    @GetMapping("/query/{fragment}/substring")
+    public ResponseEntity<?> querySubstring(@PathVariable String fragment,
+                                            @RequestParam(required = false) Long timeoutMillis) {
+        if (indexer == null) {
+            return ResponseEntity.ok(new SubstringQueryResult(fragment, Map.of(), false, 0));
+        }
+        return ResponseEntity.ok(indexer.querySubstring(fragment, toTimeout(timeoutMillis)));
+    }
+
+    @GetMapping("/tokens/top")
+    public ResponseEntity<?> topTokens(@RequestParam(defaultValue = "10") int k) {
+        return ResponseEntity.ok(indexer == null ? List.of() : indexer.topTokens(k));
+    }
+
+    @GetMapping("/tokens/{token}")
+    public ResponseEntity<?> termStatistics(@PathVariable String token) {
+        return ResponseEntity.ok(indexer == null ? new TermStatistics(token, 0, 0) : indexer.getTermStatistics(token));
     }
 
     @DeleteMapping
     public void stopIndex() {
+        if (indexer == null) {
+            return;
+        }
         indexer.close();
         indexer = null;
     }
 
+    private static Duration toTimeout(Long timeoutMillis) {
+        return timeoutMillis == null ? null : Duration.ofMillis(timeoutMillis);
+    }
+
 }
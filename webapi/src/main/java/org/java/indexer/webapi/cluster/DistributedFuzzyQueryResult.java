@@ -0,0 +1,57 @@
+package org.java.indexer.webapi.cluster;
+
+import org.java.indexer.core.index.QueryResult;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fuzzy query result merged from worker nodes, occurrences of every variant are merged separately.
+ * Result is partial under the same conditions as {@link DistributedQueryResult}.
+ */
+public class DistributedFuzzyQueryResult {
+
+    private final String queryString;
+    private final int maxEdits;
+    private final Integer totalOccurrencesCount;
+    private final Map<String, QueryResult> variants;
+    private final boolean partial;
+    private final List<String> failedNodes;
+
+    public DistributedFuzzyQueryResult(String queryString, int maxEdits, Map<String, QueryResult> variants,
+                                       List<String> failedNodes, boolean partialResults) {
+        this.queryString = queryString;
+        this.maxEdits = maxEdits;
+        this.variants = variants;
+        this.totalOccurrencesCount = variants.values().stream().map(QueryResult::getTotalOccurrencesCount).reduce(0, Integer::sum);
+        this.partial = partialResults || !failedNodes.isEmpty();
+        this.failedNodes = failedNodes;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    public Integer getTotalOccurrencesCount() {
+        return totalOccurrencesCount;
+    }
+
+    /**
+     * Results of matched token variants, closest variants first.
+     */
+    public Map<String, QueryResult> getVariants() {
+        return variants;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public List<String> getFailedNodes() {
+        return failedNodes;
+    }
+}
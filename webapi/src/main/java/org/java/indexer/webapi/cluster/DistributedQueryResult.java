@@ -0,0 +1,46 @@
+package org.java.indexer.webapi.cluster;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query result merged from worker nodes. Result is partial if some workers failed or did not respond in time,
+ * such workers are listed in {@code failedNodes}, or if some workers ran out of the query timeout.
+ */
+public class DistributedQueryResult {
+
+    private final String queryString;
+    private final Integer totalOccurrencesCount;
+    private final Map<String, Integer> occurrences;
+    private final boolean partial;
+    private final List<String> failedNodes;
+
+    public DistributedQueryResult(String queryString, Map<String, Integer> occurrences, List<String> failedNodes,
+                                  boolean partialResults) {
+        this.queryString = queryString;
+        this.occurrences = occurrences;
+        this.totalOccurrencesCount = occurrences.values().stream().reduce(0, Integer::sum);
+        this.partial = partialResults || !failedNodes.isEmpty();
+        this.failedNodes = failedNodes;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public Integer getTotalOccurrencesCount() {
+        return totalOccurrencesCount;
+    }
+
+    public Map<String, Integer> getOccurrences() {
+        return occurrences;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public List<String> getFailedNodes() {
+        return failedNodes;
+    }
+}
@@ -0,0 +1,51 @@
+package org.java.indexer.webapi.cluster;
+
+import org.java.indexer.core.index.QueryResult;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Substring query result merged from worker nodes, occurrences of every matched token are merged separately.
+ * Result is partial under the same conditions as {@link DistributedQueryResult}.
+ */
+public class DistributedSubstringQueryResult {
+
+    private final String queryString;
+    private final Integer totalOccurrencesCount;
+    private final Map<String, QueryResult> matches;
+    private final boolean partial;
+    private final List<String> failedNodes;
+
+    public DistributedSubstringQueryResult(String queryString, Map<String, QueryResult> matches, List<String> failedNodes,
+                                           boolean partialResults) {
+        this.queryString = queryString;
+        this.matches = matches;
+        this.totalOccurrencesCount = matches.values().stream().map(QueryResult::getTotalOccurrencesCount).reduce(0, Integer::sum);
+        this.partial = partialResults || !failedNodes.isEmpty();
+        this.failedNodes = failedNodes;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public Integer getTotalOccurrencesCount() {
+        return totalOccurrencesCount;
+    }
+
+    /**
+     * Results of matched tokens containing the query string, tokens found in most files first.
+     */
+    public Map<String, QueryResult> getMatches() {
+        return matches;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public List<String> getFailedNodes() {
+        return failedNodes;
+    }
+}
@@ -0,0 +1,35 @@
+package org.java.indexer.webapi.cluster;
+
+import org.java.indexer.core.index.TermStatistics;
+
+import java.util.List;
+
+/**
+ * Term statistics summed up over worker nodes, statistics are partial if some workers failed.
+ * Top tokens are merged from the top tokens of every worker, so a token missing in the top of some workers
+ * is counted only on the workers reporting it.
+ */
+public class DistributedTermStatistics {
+
+    private final List<TermStatistics> statistics;
+    private final boolean partial;
+    private final List<String> failedNodes;
+
+    public DistributedTermStatistics(List<TermStatistics> statistics, List<String> failedNodes) {
+        this.statistics = statistics;
+        this.partial = !failedNodes.isEmpty();
+        this.failedNodes = failedNodes;
+    }
+
+    public List<TermStatistics> getStatistics() {
+        return statistics;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public List<String> getFailedNodes() {
+        return failedNodes;
+    }
+}
@@ -0,0 +1,159 @@
+package org.java.indexer.webapi.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * HTTP client of worker nodes used by coordinator. Every request is limited by per-node timeout.
+ */
+@Component
+@ConditionalOnProperty(name = "jinx.role", havingValue = "coordinator")
+public class WorkerClient {
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {
+    };
+
+    private static final TypeReference<List<Map<String, Object>>> JSON_ARRAY = new TypeReference<>() {
+    };
+
+    private final List<String> workers;
+    private final Duration timeout;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+
+    public WorkerClient(@Value("${jinx.coordinator.workers}") List<String> workers,
+                        @Value("${jinx.coordinator.timeout-millis:5000}") long timeoutMillis,
+                        ObjectMapper objectMapper) {
+        if (workers.isEmpty()) {
+            throw new IllegalStateException("Coordinator requires at least one worker in jinx.coordinator.workers");
+        }
+        this.workers = List.copyOf(workers);
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.objectMapper = objectMapper;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    public List<String> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return worker responsible for the path, the same path is always routed to the same worker
+     */
+    public String workerOf(String path) {
+        return workers.get(Math.floorMod(path.hashCode(), workers.size()));
+    }
+
+    public CompletableFuture<Void> index(String worker, Map<String, Object> body) {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create(worker + "/index"))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(body)))
+                .build();
+        return send(request).thenApply(response -> null);
+    }
+
+    /**
+     * @param timeoutMillis time budget of the query on the worker, see {@link #queryTimeoutMillis}
+     */
+    public CompletableFuture<Map<String, Object>> queryToken(String worker, String token, Long timeoutMillis) {
+        return get(worker, "/index/query/" + encode(token) + "?timeoutMillis=" + queryTimeoutMillis(timeoutMillis), JSON_OBJECT);
+    }
+
+    public CompletableFuture<Map<String, Object>> queryBoolean(String worker, List<String> tokens, String operator,
+                                                               Long timeoutMillis) {
+        final String query = tokens.stream().map(token -> "tokens=" + encode(token)).collect(Collectors.joining("&"));
+        return get(worker, "/index/query?" + query + "&operator=" + encode(operator)
+                + "&timeoutMillis=" + queryTimeoutMillis(timeoutMillis), JSON_OBJECT);
+    }
+
+    public CompletableFuture<Map<String, Object>> queryFuzzy(String worker, String token, int maxEdits, Long timeoutMillis) {
+        return get(worker, "/index/query/" + encode(token) + "/fuzzy?maxEdits=" + maxEdits
+                + "&timeoutMillis=" + queryTimeoutMillis(timeoutMillis), JSON_OBJECT);
+    }
+
+    public CompletableFuture<Map<String, Object>> querySubstring(String worker, String fragment, Long timeoutMillis) {
+        return get(worker, "/index/query/" + encode(fragment) + "/substring?timeoutMillis=" + queryTimeoutMillis(timeoutMillis),
+                JSON_OBJECT);
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> topTokens(String worker, int k) {
+        return get(worker, "/index/tokens/top?k=" + k, JSON_ARRAY);
+    }
+
+    public CompletableFuture<Map<String, Object>> termStatistics(String worker, String token) {
+        return get(worker, "/index/tokens/" + encode(token), JSON_OBJECT);
+    }
+
+    /**
+     * Time budget forwarded to workers is capped at the per-node timeout, so a worker running out of it answers
+     * with partial results before its request times out. Unbounded queries get the whole per-node timeout.
+     */
+    private long queryTimeoutMillis(Long timeoutMillis) {
+        return timeoutMillis == null ? timeout.toMillis() : Math.min(timeoutMillis, timeout.toMillis());
+    }
+
+    public CompletableFuture<Void> delete(String worker) {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create(worker + "/index"))
+                .timeout(timeout)
+                .DELETE()
+                .build();
+        return send(request).thenApply(response -> null);
+    }
+
+    private <T> CompletableFuture<T> get(String worker, String pathAndQuery, TypeReference<T> type) {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create(worker + pathAndQuery))
+                .timeout(timeout)
+                .GET()
+                .build();
+        return send(request).thenApply(body -> fromJson(body, type));
+    }
+
+    private CompletableFuture<String> send(HttpRequest request) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new IllegalStateException("Worker " + request.uri() + " responded with status " + response.statusCode());
+                    }
+                    return response.body();
+                });
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, UTF_8).replace("+", "%20");
+    }
+
+    private String toJson(Map<String, Object> body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T fromJson(String body, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(body, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package org.java.indexer.webapi.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.java.indexer.webapi.cluster.WorkerClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class CoordinatorControllerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final Map<String, String> indexRequests = new ConcurrentHashMap<>();
+    private final Map<String, String> queryRequests = new ConcurrentHashMap<>();
+
+    @AfterEach
+    public void afterEach() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    public void queryMergesWorkerOccurrences() throws Exception {
+        //given
+        final String first = worker("{\"occurrences\":{\"/first/a.txt\":2},\"partial\":false}");
+        final String second = worker("{\"occurrences\":{\"/second/b.txt\":3,\"/second/c.txt\":1},\"partial\":false}");
+        final MockMvc mockMvc = coordinator(first, second);
+
+        //when
+        mockMvc.perform(get("/index/query/token"))
+
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.queryString", is("token")))
+                .andExpect(jsonPath("$.occurrences.['/first/a.txt']", is(2)))
+                .andExpect(jsonPath("$.occurrences.['/second/b.txt']", is(3)))
+                .andExpect(jsonPath("$.occurrences.['/second/c.txt']", is(1)))
+                .andExpect(jsonPath("$.totalOccurrencesCount", is(6)))
+                .andExpect(jsonPath("$.failedNodes", empty()))
+                .andExpect(jsonPath("$.partial", is(false)));
+    }
+
+    @Test
+    public void partialWorkerResultMakesMergedResultPartial() throws Exception {
+        //given
+        final String first = worker("{\"occurrences\":{\"/first/a.txt\":2},\"partial\":true}");
+        final String second = worker("{\"occurrences\":{},\"partial\":false}");
+        final MockMvc mockMvc = coordinator(first, second);
+
+        //when
+        mockMvc.perform(get("/index/query/token").param("timeoutMillis", "10"))
+
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalOccurrencesCount", is(2)))
+                .andExpect(jsonPath("$.failedNodes", empty()))
+                .andExpect(jsonPath("$.partial", is(true)));
+    }
+
+    @Test
+    public void unreachableWorkerIsReportedAsFailed() throws Exception {
+        //given
+        final String reachable = worker("{\"occurrences\":{\"/first/a.txt\":2},\"partial\":false}");
+        final String unreachable = unreachableWorker();
+        final MockMvc mockMvc = coordinator(reachable, unreachable);
+
+        //when
+        mockMvc.perform(get("/index/query/token"))
+
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.occurrences.['/first/a.txt']", is(2)))
+                .andExpect(jsonPath("$.failedNodes", contains(unreachable)))
+                .andExpect(jsonPath("$.partial", is(true)));
+        mockMvc.perform(post("/index").contentType(MediaType.APPLICATION_JSON).content("{\"paths\":[\"/first\"]}"))
+                .andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.failedNodes", contains(unreachable)));
+    }
+
+    @Test
+    public void indexedPathsAreRoutedToTheirWorkers() throws Exception {
+        //given
+        final String first = worker("{}");
+        final String second = worker("{}");
+        final WorkerClient workerClient = new WorkerClient(List.of(first, second), 5000, objectMapper);
+        final List<String> paths = List.of("/a", "/b", "/c", "/d", "/e");
+        final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new CoordinatorController(workerClient)).build();
+
+        //when
+        mockMvc.perform(post("/index").contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("paths", paths))))
+
+                //then
+                .andExpect(status().isOk());
+        for (String worker : List.of(first, second)) {
+            final List<String> expected = new ArrayList<>();
+            paths.stream().filter(path -> workerClient.workerOf(path).equals(worker)).forEach(expected::add);
+            assertEquals(expected, objectMapper.readValue(indexRequests.get(worker), Map.class).get("paths"));
+        }
+    }
+
+    @Test
+    public void workersWithoutPathsAreNotSentIndexRequests() throws Exception {
+        //given
+        final String first = worker("{}");
+        final String second = worker("{}");
+        final WorkerClient workerClient = new WorkerClient(List.of(first, second), 5000, objectMapper);
+        final String path = "/a";
+        final String owner = workerClient.workerOf(path);
+        final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new CoordinatorController(workerClient)).build();
+
+        //when
+        mockMvc.perform(post("/index").contentType(MediaType.APPLICATION_JSON).content("{\"paths\":[\"" + path + "\"]}"))
+
+                //then
+                .andExpect(status().isOk());
+        assertEquals(Set.of(owner), indexRequests.keySet());
+    }
+
+    @Test
+    public void booleanQueryMergesWorkerOccurrences() throws Exception {
+        //given
+        final String first = worker("{\"occurrences\":{\"/first/a.txt\":2},\"partial\":false}");
+        final String second = worker("{\"occurrences\":{\"/second/b.txt\":3},\"partial\":false}");
+        final MockMvc mockMvc = coordinator(first, second);
+
+        //when
+        mockMvc.perform(get("/index/query").param("tokens", "first", "second").param("operator", "OR"))
+
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.queryString", is("first OR second")))
+                .andExpect(jsonPath("$.totalOccurrencesCount", is(5)))
+                .andExpect(jsonPath("$.partial", is(false)));
+        assertThat(queryRequests.get(first), containsString("tokens=first&tokens=second&operator=OR"));
+    }
+
+    @Test
+    public void fuzzyQueryMergesVariantsClosestFirst() throws Exception {
+        //given
+        final String first = worker("{\"variants\":{"
+                + "\"tokem\":{\"occurrences\":{\"/first/a.txt\":4},\"partial\":false,\"tookMillis\":1},"
+                + "\"token\":{\"occurrences\":{\"/first/b.txt\":2},\"partial\":false,\"tookMillis\":1}}}");
+        final String second = worker("{\"variants\":{"
+                + "\"token\":{\"occurrences\":{\"/second/c.txt\":1},\"partial\":true,\"tookMillis\":3}}}");
+        final MockMvc mockMvc = coordinator(first, second);
+
+        //when
+        mockMvc.perform(get("/index/query/token/fuzzy").param("maxEdits", "1"))
+
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.variants.keys()", contains("token", "tokem")))
+                .andExpect(jsonPath("$.variants.token.totalOccurrencesCount", is(3)))
+                .andExpect(jsonPath("$.variants.token.partial", is(true)))
+                .andExpect(jsonPath("$.variants.token.tookMillis", is(3)))
+                .andExpect(jsonPath("$.totalOccurrencesCount", is(7)))
+                .andExpect(jsonPath("$.partial", is(false)));
+    }
+
+    @Test
+    public void substringQueryMergesMatchesFoundInMostFilesFirst() throws Exception {
+        //given
+        final String first = worker("{\"matches\":{"
+                + "\"tokens\":{\"occurrences\":{\"/first/a.txt\":5},\"partial\":false,\"tookMillis\":1}}}");
+        final String second = worker("{\"matches\":{"
+                + "\"token\":{\"occurrences\":{\"/second/b.txt\":1,\"/second/c.txt\":1},\"partial\":false,\"tookMillis\":1}}}");
+        final MockMvc mockMvc = coordinator(first, second);
+
+        //when
+        mockMvc.perform(get("/index/query/oke/substring"))
+
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.matches.keys()", contains("token", "tokens")))
+                .andExpect(jsonPath("$.totalOccurrencesCount", is(7)));
+    }
+
+    @Test
+    public void termStatisticsAreSummedOverWorkers() throws Exception {
+        //given
+        final String first = worker(Map.of(
+                "/index/tokens/top", "[{\"token\":\"common\",\"documentFrequency\":2,\"totalFrequency\":5},"
+                        + "{\"token\":\"first\",\"documentFrequency\":1,\"totalFrequency\":1}]",
+                "/index/tokens/", "{\"token\":\"common\",\"documentFrequency\":2,\"totalFrequency\":5}"));
+        final String second = worker(Map.of(
+                "/index/tokens/top", "[{\"token\":\"second\",\"documentFrequency\":2,\"totalFrequency\":2},"
+                        + "{\"token\":\"common\",\"documentFrequency\":1,\"totalFrequency\":1}]",
+                "/index/tokens/", "{\"token\":\"common\",\"documentFrequency\":1,\"totalFrequency\":1}"));
+        final MockMvc mockMvc = coordinator(first, second);
+
+        //when
+        mockMvc.perform(get("/index/tokens/top").param("k", "2"))
+
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.statistics[*].token", contains("common", "second")))
+                .andExpect(jsonPath("$.statistics[0].documentFrequency", is(3)))
+                .andExpect(jsonPath("$.statistics[0].totalFrequency", is(6)))
+                .andExpect(jsonPath("$.partial", is(false)));
+        mockMvc.perform(get("/index/tokens/common"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.statistics[0].documentFrequency", is(3)))
+                .andExpect(jsonPath("$.statistics[0].totalFrequency", is(6)));
+    }
+
+    @Test
+    public void queryTimeoutIsCappedAtWorkerTimeout() throws Exception {
+        //given
+        final String worker = worker("{\"occurrences\":{},\"partial\":false}");
+        final MockMvc mockMvc = coordinator(worker);
+
+        //when
+        mockMvc.perform(get("/index/query/token").param("timeoutMillis", "60000"));
+
+        //then
+        assertThat(queryRequests.get(worker), endsWith("timeoutMillis=5000"));
+
+        //when
+        mockMvc.perform(get("/index/query/token").param("timeoutMillis", "10"));
+
+        //then
+        assertThat(queryRequests.get(worker), endsWith("timeoutMillis=10"));
+
+        //when
+        mockMvc.perform(get("/index/query/token"));
+
+        //then
+        assertThat(queryRequests.get(worker), endsWith("timeoutMillis=5000"));
+    }
+
+    private MockMvc coordinator(String... workers) {
+        return MockMvcBuilders.standaloneSetup(new CoordinatorController(new WorkerClient(List.of(workers), 5000, objectMapper)))
+                .build();
+    }
+
+    /**
+     * Starts worker stub answering queries with the given JSON and recording index requests.
+     *
+     * @return base URL of the worker
+     */
+    private String worker(String queryResponse) throws IOException {
+        return worker(Map.of("/index", queryResponse));
+    }
+
+    /**
+     * Same as {@link #worker(String)}, every query is answered with the JSON of the longest matching path prefix.
+     * The last query of the worker is recorded.
+     */
+    private String worker(Map<String, String> queryResponses) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final String url = "http://localhost:" + server.getAddress().getPort();
+        server.createContext("/index", exchange -> {
+            final byte[] response;
+            if ("POST".equals(exchange.getRequestMethod())) {
+                indexRequests.put(url, new String(exchange.getRequestBody().readAllBytes(), UTF_8));
+                response = new byte[0];
+            } else {
+                final String path = exchange.getRequestURI().getPath();
+                queryRequests.put(url, exchange.getRequestURI().toString());
+                response = queryResponses.keySet().stream()
+                        .filter(path::startsWith)
+                        .max(Comparator.comparingInt(String::length))
+                        .map(queryResponses::get)
+                        .orElseThrow()
+                        .getBytes(UTF_8);
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length == 0 ? -1 : response.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return url;
+    }
+
+    /**
+     * @return base URL of a port nobody listens on
+     */
+    private static String unreachableWorker() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://localhost:" + socket.getLocalPort();
+        }
+    }
+}